@@ -1,11 +1,18 @@
 package launcher;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import model.ESPPRCResult;
 import model.EspprcInstance;
 import model.Label;
+import model.LabelStore;
 import model.VRPTWResult;
 import reader.SolomonReader;
 import solver.EspprcSolver;
@@ -34,17 +41,22 @@ public class Launcher {
 	 * @param writeColumns
 	 *            Set to "true" if you would like to generate a file with all the
 	 *            columns added to de Master Problem
+	 * @param options
+	 *            The options of the solvers and the number of instances solved at
+	 *            the same time, each one with its own instance and solver. The
+	 *            results are written in the order of the instances
 	 * @throws IOException
 	 *             File names could not be found
 	 */
 	public static void runMasterSolver(
-			String directory,
+			final String directory,
 			String instanceType,
-			int nbCustomers,
-			int timeLimit,
-			int labelLimit,
-			String[] solomonInstances,
-			boolean writeColumns
+			final int nbCustomers,
+			final int timeLimit,
+			final int labelLimit,
+			final String[] solomonInstances,
+			final boolean writeColumns,
+			final SolverOptions options
 			)throws IOException {
 
 		// Stock results in a file
@@ -53,39 +65,62 @@ public class Launcher {
 
 		resultWriter.writeMasterTitles();
 
-		for (String instanceName : solomonInstances) {
-			// Creating the instance
-			EspprcInstance instance = new EspprcInstance();
-			
-			instance.setDuplicateOrigin(true);
-			
-			// Reading the instances
-			SolomonReader reader = new SolomonReader(instance, directory + instanceName);
-			reader.read( nbCustomers );
-			
-			// Preprocessing nodes
-			instance.buildEdges(false);
-			instance.buildSuccessors();
-			instance.setName(instanceName.substring(0, instanceName.length() - 4));
-
-			System.out.println("\n>>> Solving instance " + instanceName);
-
-			// Introduction
-			System.out.println("Solving the instance for " + instance.getNodes().length + " nodes");
-
-			System.out.println("");
-			VrptwSolver mp = new VrptwSolver(instance);
-
-			long startTime = System.nanoTime();
-
-			VRPTWResult result = mp.runColumnGeneration(timeLimit, labelLimit, writeColumns, false);
-
-			long endTime = System.nanoTime();
-			long timeElapsed = endTime - startTime;
-
-			System.out.println("--------------------------------------");
+		// Stock results in a list
+		final VRPTWResult[] results = new VRPTWResult[solomonInstances.length];
+		final long[] timesElapsed = new long[solomonInstances.length];
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getNbParallelInstances()));
+		try {
+			ArrayList<Future<EspprcInstance>> solvedInstances = new ArrayList<Future<EspprcInstance>>();
+			for (int i = 0; i < solomonInstances.length; i++) {
+				final int index = i;
+				solvedInstances.add(executor.submit(new Callable<EspprcInstance>() {
+					@Override
+					public EspprcInstance call() {
+						// Creating the instance
+						EspprcInstance instance = readInstance(directory, solomonInstances[index], nbCustomers, false);
+
+						System.out.println("\n>>> Solving instance " + solomonInstances[index]);
+
+						// Introduction
+						System.out.println("Solving the instance for " + instance.getNodes().length + " nodes");
+
+						System.out.println("");
+						VrptwSolver mp = new VrptwSolver(instance);
+						mp.setUseSkyline(options.isUseSkyline());
+						mp.setQueuePolicy(options.getQueuePolicy());
+						mp.setUseTimeBuckets(options.isUseTimeBuckets());
+						mp.setNgNeighbourhoodSize(options.getNgNeighbourhoodSize());
+						mp.setPricing(options.getPricing());
+						mp.setCycleLength(options.getCycleLength());
+						mp.setUseCompletionBounds(options.isUseCompletionBounds());
+						mp.setPricingTimeLimitNanos(options.getPricingLatency() * 1000000L);
+						mp.setEarlyStopNbColumns(options.getEarlyStopNbColumns());
+						mp.setNbPricingThreads(options.getNbThreads());
+						mp.setUseParallelDominance(options.isUseParallelDominance());
+						mp.setUseSuccessorVectors(options.isUseSuccessorVectors());
+
+						long startTime = System.nanoTime();
+
+						results[index] = mp.runColumnGeneration(timeLimit, labelLimit, writeColumns, false);
+
+						long endTime = System.nanoTime();
+						timesElapsed[index] = endTime - startTime;
+
+						System.out.println("--------------------------------------");
+
+						return instance;
+					}
+				}));
+			}
 
-			resultWriter.writeMasterResult(instance, result, timeElapsed / 1000000);
+			// The results are written in the order of the instances, whichever ends first
+			for (int i = 0; i < solomonInstances.length; i++) {
+				EspprcInstance instance = waitForInstance(solvedInstances.get(i));
+				resultWriter.writeMasterResult(instance, results[i], timesElapsed[i] / 1000000);
+			}
+		} finally {
+			executor.shutdownNow();
 		}
 		
 		resultWriter.close();
@@ -100,74 +135,110 @@ public class Launcher {
 	 * @param timeLimit
 	 * @param labelLimit
 	 * @param solomonInstances
+	 * @param options
 	 * @throws IOException
 	 */
 	public static void runLabelWriter(
-			String directory,
-			int nbCustomers,
-			int timeLimit,
-			int labelLimit,
-			String[] solomonInstances
+			final String directory,
+			final int nbCustomers,
+			final int timeLimit,
+			final int labelLimit,
+			String[] solomonInstances,
+			final SolverOptions options
 			) throws IOException {
 
-		for (String instanceName : solomonInstances) {
-			// Creating the instance
-			EspprcInstance instance = new EspprcInstance();
-			instance.setDuplicateOrigin(true);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getNbParallelInstances()));
+		try {
+			ArrayList<Future<EspprcInstance>> solvedInstances = new ArrayList<Future<EspprcInstance>>();
+			for (final String instanceName : solomonInstances) {
+				solvedInstances.add(executor.submit(new Callable<EspprcInstance>() {
+					@Override
+					public EspprcInstance call() throws IOException {
+						return writeLabels(directory, instanceName, nbCustomers, timeLimit, labelLimit, options);
+					}
+				}));
+			}
 
-			// Reading the instances
-			SolomonReader reader = new SolomonReader(instance, directory + instanceName);
-			reader.read(nbCustomers);
+			for (Future<EspprcInstance> solvedInstance : solvedInstances) {
+				waitForInstance(solvedInstance);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-			// Preprocessing nodes
-			instance.buildEdges(true);
-			instance.buildSuccessors();
+	/**
+	 * It solves the pricing problem of a single instance and writes the labels of each node
+	 * in a folder of its own
+	 * 
+	 * @param directory
+	 * @param instanceName
+	 * @param nbCustomers
+	 * @param timeLimit
+	 * @param labelLimit
+	 * @param options
+	 * @return the solved instance
+	 * @throws IOException
+	 */
+	private static EspprcInstance writeLabels(String directory, String instanceName, int nbCustomers, int timeLimit,
+			int labelLimit, SolverOptions options) throws IOException {
+		// Creating the instance
+		EspprcInstance instance = readInstance(directory, instanceName, nbCustomers, true);
 
-			// Introduction
-			System.out.println("\n>>> Solving instance " + instanceName + "\n" + "Solving the instance for "
-					+ instance.getNodes().length + " nodes");
+		// Introduction
+		System.out.println("\n>>> Solving instance " + instanceName + "\n" + "Solving the instance for "
+				+ instance.getNodes().length + " nodes");
 
-			LabellingSolver solver = new LabellingSolver(instance);
+		LabellingSolver solver = createLabellingSolver(instance, options);
 
-			// Measure the labelling algorithm elapsed time
-			long startTime = System.nanoTime();
-			ArrayList<Label>[] nodeLabels = solver.genFeasibleRoutes(timeLimit, labelLimit);
-			long endTime = System.nanoTime();
-			long timeElapsed = endTime - startTime;
+		// Measure the labelling algorithm elapsed time
+		long startTime = System.nanoTime();
+		ArrayList<Label>[] nodeLabels = solver.genFeasibleRoutes(timeLimit, labelLimit);
+		long endTime = System.nanoTime();
+		long timeElapsed = endTime - startTime;
 
-			// Get solution information
-			ArrayList<Label> depotLabels = nodeLabels[nodeLabels.length - 1];
+		// Get solution information
+		ArrayList<Label> depotLabels = nodeLabels[nodeLabels.length - 1];
 
-			Label minCostRoute = depotLabels.get(0);
-			for (Label currentLabel : depotLabels) {
-				if (currentLabel.getCost() < minCostRoute.getCost()) {
-					minCostRoute = currentLabel;
-				}
+		Label minCostRoute = depotLabels.isEmpty() ? null : depotLabels.get(0);
+		for (Label currentLabel : depotLabels) {
+			if (currentLabel.getCost() < minCostRoute.getCost()) {
+				minCostRoute = currentLabel;
 			}
+		}
 
-			// Create directory
-			String folderName = instanceName.substring(0, instanceName.length() - 4);
-			folderName = folderName + "-" + nbCustomers;
-
-			// Writing label lists for each node
-			for (ArrayList<Label> labelList : nodeLabels) {
-				// Node information
-				int nodeId = labelList.get(0).getCurrent().getId();
+		// Create directory
+		String folderName = instanceName.substring(0, instanceName.length() - 4);
+		folderName = folderName + "-" + nbCustomers;
 
-				// Create file
-				ResultWriter resultWriter = new ResultWriter("Node_" + nodeId + "-" + labelList.size(), folderName);
-				resultWriter.createFile();
-				
-				resultWriter.writeLabels( labelList );
+		// Writing label lists for each node
+		for (ArrayList<Label> labelList : nodeLabels) {
+			if (labelList.isEmpty()) {
+				continue;
 			}
 
-			// Log results
+			// Node information
+			int nodeId = labelList.get(0).getCurrent().getId();
+
+			// Create file
+			ResultWriter resultWriter = new ResultWriter("Node_" + nodeId + "-" + labelList.size(), folderName);
+			resultWriter.createFile();
+			
+			resultWriter.writeLabels( labelList );
+		}
+
+		// Log results
+		if (minCostRoute != null) {
 			System.out.println(minCostRoute);
 			System.out.println(minCostRoute.getCost());
-			System.out.println("Algorithm has finished in " + (timeElapsed / 1000000) + " milliseconds");
-
-			System.out.println("--------------------------------------");
+		} else {
+			System.out.println("No route has reached the depot");
 		}
+		System.out.println("Algorithm has finished in " + (timeElapsed / 1000000) + " milliseconds");
+
+		System.out.println("--------------------------------------");
+
+		return instance;
 	}
 
 	/**
@@ -181,10 +252,12 @@ public class Launcher {
 	 * @param labelLimit
 	 * @param useCplex
 	 * @param solomonInstances
+	 * @param options
 	 * @throws IOException
 	 */
-	public static void runPricingSolver(String directory, String instanceType, int nbCustomers, int timeLimit,
-			int labelLimit, int useCplex, String[] solomonInstances) throws IOException {
+	public static void runPricingSolver(final String directory, String instanceType, final int nbCustomers,
+			final int timeLimit, final int labelLimit, final int useCplex, final String[] solomonInstances,
+			final SolverOptions options) throws IOException {
 		
 		// Create the file
 		ResultWriter resultWriter = new ResultWriter("results_" + instanceType + "_" + nbCustomers);
@@ -194,51 +267,135 @@ public class Launcher {
 		resultWriter.writePricingTitles(useCplex == 1);
 
 		// Stock results in a list
-		ESPPRCResult[] cplexResults = new ESPPRCResult[solomonInstances.length];
-		ESPPRCResult[] labellingResults = new ESPPRCResult[solomonInstances.length];
-
-		for (int i = 0; i < solomonInstances.length; i++) {
-			// Creating the instance
-			EspprcInstance instance = new EspprcInstance();
-			instance.setDuplicateOrigin(true);
-
-			// Reading the instances
-			SolomonReader reader = new SolomonReader(instance, directory + solomonInstances[i]);
-			reader.read(nbCustomers);
-
-			// Preprocessing nodes
-			instance.buildEdges(true);
-			instance.buildSuccessors();
-			instance.setName(solomonInstances[i].substring(0, solomonInstances[i].length() - 4));
-			
-			// Introduction
-			System.out.println("\n>>> Solving instance " + solomonInstances[i] + "\n" + "Solving the instance for "
-					+ instance.getNodes().length + " nodes");
+		final ESPPRCResult[] cplexResults = new ESPPRCResult[solomonInstances.length];
+		final ESPPRCResult[] labellingResults = new ESPPRCResult[solomonInstances.length];
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getNbParallelInstances()));
+		try {
+			ArrayList<Future<EspprcInstance>> solvedInstances = new ArrayList<Future<EspprcInstance>>();
+			for (int i = 0; i < solomonInstances.length; i++) {
+				final int index = i;
+				solvedInstances.add(executor.submit(new Callable<EspprcInstance>() {
+					@Override
+					public EspprcInstance call() {
+						// Creating the instance
+						EspprcInstance instance = readInstance(directory, solomonInstances[index], nbCustomers, true);
+
+						// Introduction
+						System.out.println("\n>>> Solving instance " + solomonInstances[index] + "\n"
+								+ "Solving the instance for " + instance.getNodes().length + " nodes");
+
+						// Solving
+						if (useCplex == 1) {
+							cplexResults[index] = solveESPPRC(instance, timeLimit);
+						}
+
+						System.out.println("");
+
+						labellingResults[index] = labellingAlgorithm(instance, timeLimit, labelLimit, options);
+
+						// Log results
+						if (useCplex == 1) {
+							System.out.println(cplexResults[index].getRoute());
+							System.out.println(cplexResults[index].getCost());
+						}
+						System.out.println(labellingResults[index].getRoute());
+						System.out.println(labellingResults[index].getCost());
+
+						System.out.println("--------------------------------------");
+
+						return instance;
+					}
+				}));
+			}
 
-			// Solving
-			if (useCplex == 1) {
-				cplexResults[i] = solveESPPRC(instance, timeLimit);
+			// Write results in a file in the order of the instances
+			for (int i = 0; i < solomonInstances.length; i++) {
+				EspprcInstance instance = waitForInstance(solvedInstances.get(i));
+				resultWriter.writePricingResults(instance, cplexResults[i], labellingResults[i]);
 			}
+		} finally {
+			executor.shutdownNow();
+		}
 
-			System.out.println("");
+		resultWriter.close();
+	}
 
-			labellingResults[i] = labellingAlgorithm(instance, timeLimit, labelLimit);
+	/**
+	 * Read an instance and build its edges and successors
+	 * 
+	 * @param directory
+	 * @param instanceName
+	 * @param nbCustomers
+	 * @param simulate
+	 *            Set to "true" to generate random negative costs
+	 * @return the instance, ready to be solved
+	 */
+	private static EspprcInstance readInstance(String directory, String instanceName, int nbCustomers,
+			boolean simulate) {
+		// Creating the instance
+		EspprcInstance instance = new EspprcInstance();
+		instance.setDuplicateOrigin(true);
+
+		// Reading the instances
+		SolomonReader reader = new SolomonReader(instance, directory + instanceName);
+		reader.read(nbCustomers);
+
+		// Preprocessing nodes
+		instance.buildEdges(simulate);
+		instance.buildSuccessors();
+		instance.setName(instanceName.substring(0, instanceName.length() - 4));
+
+		return instance;
+	}
 
-			// Log results
-			if (useCplex == 1) {
-				System.out.println(cplexResults[i].getRoute());
-				System.out.println(cplexResults[i].getCost());
+	/**
+	 * Wait for an instance to be solved on the executor of the runners
+	 * 
+	 * @param solvedInstance
+	 * @return the solved instance
+	 * @throws IOException
+	 *             The instance could not be solved or the wait was interrupted
+	 */
+	private static EspprcInstance waitForInstance(Future<EspprcInstance> solvedInstance) throws IOException {
+		try {
+			return solvedInstance.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while solving the instances");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
 			}
-			System.out.println(labellingResults[i].getRoute());
-			System.out.println(labellingResults[i].getCost());
-
-			System.out.println("--------------------------------------");
-
-			// Write results in a file
-			resultWriter.writePricingResults(instance, cplexResults[i], labellingResults[i]);
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
 		}
+	}
 
-		resultWriter.close();
+	/**
+	 * Create a labelling solver for the instance with the given options
+	 * 
+	 * @param instance
+	 * @param options
+	 * @return the solver, ready to be run
+	 */
+	private static LabellingSolver createLabellingSolver(EspprcInstance instance, SolverOptions options) {
+		LabellingSolver solver = new LabellingSolver(instance);
+		solver.setUseSkyline(options.isUseSkyline());
+		solver.setQueuePolicy(options.getQueuePolicy());
+		solver.setUseTimeBuckets(options.isUseTimeBuckets());
+		solver.setNgNeighbourhoodSize(options.getNgNeighbourhoodSize());
+		solver.setNbThreads(options.getNbThreads());
+		solver.setUseParallelDominance(options.isUseParallelDominance());
+		solver.setUseSuccessorVectors(options.isUseSuccessorVectors());
+
+		return solver;
 	}
 
 	/**
@@ -247,18 +404,20 @@ public class Launcher {
 	 * @param instance
 	 * @param timeLimit
 	 * @param labelLimit
+	 * @param options
 	 * @return
 	 */
-	private static ESPPRCResult labellingAlgorithm(EspprcInstance instance, int timeLimit, int labelLimit) {
+	private static ESPPRCResult labellingAlgorithm(EspprcInstance instance, int timeLimit, int labelLimit,
+			SolverOptions options) {
 		// We start the label correcting algorithm
 		System.out.println("START: Generating feasible routes");
 
 		// We initialize the solver
-		LabellingSolver solver = new LabellingSolver(instance);
+		LabellingSolver solver = createLabellingSolver(instance, options);
 
 		// We start measuring the algorithm elapsed time
 		long startTime = System.nanoTime();
-		ArrayList<Label>[] nodeLabels = solver.genFeasibleRoutes(timeLimit, labelLimit);
+		LabelStore[] nodeLabels = solver.genLabelStores(timeLimit, labelLimit);
 		long endTime = System.nanoTime();
 
 		// Label correcting algorithm has finished
@@ -269,24 +428,31 @@ public class Launcher {
 
 		// Get solution information
 		int depotIndex = instance.isDuplicateOrigin() ? nodeLabels.length - 1 : 0;
-		ArrayList<Label> depotLabels = nodeLabels[depotIndex];
+		ArrayList<Label> depotLabels = nodeLabels[depotIndex].getLabels(nodeLabels);
 
 		int nbFeasibleRoutes = depotLabels.size();
 
+		int nbGeneratedLabels = 0;
+		for (LabelStore labelStore : nodeLabels) {
+			nbGeneratedLabels += labelStore.size();
+		}
+
+		System.out.println("Generated " + nbFeasibleRoutes + " routes");
+		System.out.println("Extended " + solver.getNbExtensions() + " labels");
+		System.out.println("Algorithm has finished in " + (timeElapsed / 1000000) + " milliseconds");
+
+		// The time limit may be reached before any route reaches the depot
+		if (depotLabels.isEmpty()) {
+			System.out.println("No route has reached the depot");
+			return new ESPPRCResult("", 0, timeElapsed / 1000000, 0, nbFeasibleRoutes, nbGeneratedLabels);
+		}
+
 		Label minCostRoute = depotLabels.get(0);
 		for (Label currentLabel : depotLabels) {
 			if (currentLabel.getCost() < minCostRoute.getCost()) {
 				minCostRoute = currentLabel;
 			}
 		}
-
-		int nbGeneratedLabels = 0;
-		for (ArrayList<Label> labelList : nodeLabels) {
-			nbGeneratedLabels += labelList.size();
-		}
-
-		System.out.println("Generated " + nbFeasibleRoutes + " routes");
-		System.out.println("Algorithm has finished in " + (timeElapsed / 1000000) + " milliseconds");
 		
 		// Return
 		return new ESPPRCResult(minCostRoute.getRoute(), minCostRoute.getCost(), timeElapsed / 1000000,
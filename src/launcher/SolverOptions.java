@@ -0,0 +1,158 @@
+package launcher;
+
+import solver.NodeScheduler;
+import solver.VrptwSolver;
+
+/**
+ * The options of the labelling and column generation solvers given to the runners of the launcher,
+ * the defaults being the ones of the main options
+ * @author pablo
+ *
+ */
+public class SolverOptions {
+
+	/** If the labels of each node are indexed with a skyline instead of a cost ordered list */
+	private boolean useSkyline;
+
+	/** The order in which the labelling algorithm treats waiting nodes */
+	private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+
+	/** If the labels are extended once in increasing time order instead of following the queue policy */
+	private boolean useTimeBuckets;
+
+	/** The number of nearest customers whose visits the labels remember, every visit is remembered if it is not positive */
+	private int ngNeighbourhoodSize;
+
+	/** The algorithm solving the pricing problem */
+	private VrptwSolver.Pricing pricing = VrptwSolver.Pricing.LABELLING;
+
+	/** The length of the longest cycle forbidden by the relaxed pricing used in the first iterations, 0 to only use the exact pricing */
+	private int cycleLength;
+
+	/** If the pricing labels that cannot lead to a negative route are discarded */
+	private boolean useCompletionBounds;
+
+	/** The time in milliseconds after which each pricing returns the best routes found so far, 0 to only use the time limit */
+	private long pricingLatency;
+
+	/** The number of negative columns after which the pricing stops in the first iterations, 0 to always extend every label */
+	private int earlyStopNbColumns;
+
+	/** The number of threads extending the labels */
+	private int nbThreads = 1;
+
+	/** If the dominance of large batches of labels is checked on the fork join pool */
+	private boolean useParallelDominance;
+
+	/** The number of instances solved at the same time, each one with its own instance and solver */
+	private int nbParallelInstances = 1;
+
+	/** If each label is extended only to the successors it can still reach, going through them with bit operations */
+	private boolean useSuccessorVectors;
+
+	// ===== GETTERS & SETTERS =====
+
+	public boolean isUseSkyline() {
+		return useSkyline;
+	}
+
+	public void setUseSkyline(boolean useSkyline) {
+		this.useSkyline = useSkyline;
+	}
+
+	public NodeScheduler.Policy getQueuePolicy() {
+		return queuePolicy;
+	}
+
+	public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+
+	public boolean isUseTimeBuckets() {
+		return useTimeBuckets;
+	}
+
+	public void setUseTimeBuckets(boolean useTimeBuckets) {
+		this.useTimeBuckets = useTimeBuckets;
+	}
+
+	public int getNgNeighbourhoodSize() {
+		return ngNeighbourhoodSize;
+	}
+
+	public void setNgNeighbourhoodSize(int ngNeighbourhoodSize) {
+		this.ngNeighbourhoodSize = ngNeighbourhoodSize;
+	}
+
+	public VrptwSolver.Pricing getPricing() {
+		return pricing;
+	}
+
+	public void setPricing(VrptwSolver.Pricing pricing) {
+		this.pricing = pricing;
+	}
+
+	public int getCycleLength() {
+		return cycleLength;
+	}
+
+	public void setCycleLength(int cycleLength) {
+		this.cycleLength = cycleLength;
+	}
+
+	public boolean isUseCompletionBounds() {
+		return useCompletionBounds;
+	}
+
+	public void setUseCompletionBounds(boolean useCompletionBounds) {
+		this.useCompletionBounds = useCompletionBounds;
+	}
+
+	public long getPricingLatency() {
+		return pricingLatency;
+	}
+
+	public void setPricingLatency(long pricingLatency) {
+		this.pricingLatency = pricingLatency;
+	}
+
+	public int getEarlyStopNbColumns() {
+		return earlyStopNbColumns;
+	}
+
+	public void setEarlyStopNbColumns(int earlyStopNbColumns) {
+		this.earlyStopNbColumns = earlyStopNbColumns;
+	}
+
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = nbThreads;
+	}
+
+	public boolean isUseParallelDominance() {
+		return useParallelDominance;
+	}
+
+	public void setUseParallelDominance(boolean useParallelDominance) {
+		this.useParallelDominance = useParallelDominance;
+	}
+
+	public int getNbParallelInstances() {
+		return nbParallelInstances;
+	}
+
+	public void setNbParallelInstances(int nbParallelInstances) {
+		this.nbParallelInstances = nbParallelInstances;
+	}
+
+	public boolean isUseSuccessorVectors() {
+		return useSuccessorVectors;
+	}
+
+	public void setUseSuccessorVectors(boolean useSuccessorVectors) {
+		this.useSuccessorVectors = useSuccessorVectors;
+	}
+}
@@ -3,7 +3,10 @@ package main;
 import java.io.IOException;
 
 import launcher.Launcher;
+import launcher.SolverOptions;
 import reader.SolomonReader;
+import solver.NodeScheduler;
+import solver.VrptwSolver;
 
 public class Main {
 
@@ -18,6 +21,19 @@ public class Main {
 		String directory = "./instances/solomon/";
 		String problem = "master";
 		boolean writeColumns = true;
+		String labelIndex = "list";
+		String queuePolicy = "fifo";
+		int useTimeBuckets = 0;
+		int ngNeighbourhoodSize = 0;
+		String pricing = "labelling";
+		int cycleLength = 0;
+		int useCompletionBounds = 0;
+		long pricingLatency = 0;
+		int earlyStopNbColumns = 0;
+		int nbThreads = 1;
+		int useParallelDominance = 0;
+		int nbParallelInstances = 1;
+		int useSuccessorVectors = 0;
 
 		// Reading arguments
 		if (args.length > 0) {
@@ -36,22 +52,64 @@ public class Main {
 					labelLimit = Integer.parseInt(arg.substring(12));
 				} else if (arg.contains("-problem")) {
 					problem = arg.substring(9);
+				} else if (arg.contains("-index")) {
+					labelIndex = arg.substring(7);
+				} else if (arg.contains("-queue")) {
+					queuePolicy = arg.substring(7);
+				} else if (arg.contains("-buckets")) {
+					useTimeBuckets = Integer.parseInt(arg.substring(9));
+				} else if (arg.contains("-ng")) {
+					ngNeighbourhoodSize = Integer.parseInt(arg.substring(4));
+				} else if (arg.contains("-pricing")) {
+					pricing = arg.substring(9);
+				} else if (arg.contains("-kcycle")) {
+					cycleLength = Integer.parseInt(arg.substring(8));
+				} else if (arg.contains("-bounds")) {
+					useCompletionBounds = Integer.parseInt(arg.substring(8));
+				} else if (arg.contains("-latency")) {
+					pricingLatency = Long.parseLong(arg.substring(9));
+				} else if (arg.contains("-early")) {
+					earlyStopNbColumns = Integer.parseInt(arg.substring(7));
+				} else if (arg.contains("-workers")) {
+					nbThreads = Integer.parseInt(arg.substring(9));
+				} else if (arg.contains("-forkjoin")) {
+					useParallelDominance = Integer.parseInt(arg.substring(10));
+				} else if (arg.contains("-parallel")) {
+					nbParallelInstances = Integer.parseInt(arg.substring(10));
+				} else if (arg.contains("-successors")) {
+					useSuccessorVectors = Integer.parseInt(arg.substring(12));
 				}
 			}
 		}
 
+		// Reading solver options
+		SolverOptions options = new SolverOptions();
+		options.setUseSkyline(labelIndex.equalsIgnoreCase("skyline"));
+		options.setQueuePolicy(NodeScheduler.Policy.valueOf(queuePolicy.toUpperCase()));
+		options.setUseTimeBuckets(useTimeBuckets > 0);
+		options.setNgNeighbourhoodSize(ngNeighbourhoodSize);
+		options.setPricing(VrptwSolver.Pricing.valueOf(pricing.toUpperCase()));
+		options.setCycleLength(cycleLength);
+		options.setUseCompletionBounds(useCompletionBounds > 0);
+		options.setPricingLatency(pricingLatency);
+		options.setEarlyStopNbColumns(earlyStopNbColumns);
+		options.setNbThreads(nbThreads);
+		options.setUseParallelDominance(useParallelDominance > 0);
+		options.setNbParallelInstances(nbParallelInstances);
+		options.setUseSuccessorVectors(useSuccessorVectors > 0);
+
 		// Reading instance option
 		String[] solomonInstances = getSelectedInstances(instanceType);
 
 		switch (problem.toUpperCase()) {
 		case "MASTER":
-			Launcher.runMasterSolver(directory, instanceType, nbCustomers, timeLimit, labelLimit, solomonInstances, writeColumns);
+			Launcher.runMasterSolver(directory, instanceType, nbCustomers, timeLimit, labelLimit, solomonInstances, writeColumns, options);
 			break;
 		case "PRICING":
-			Launcher.runPricingSolver(directory, instanceType, nbCustomers, timeLimit, labelLimit, useCplex, solomonInstances);
+			Launcher.runPricingSolver(directory, instanceType, nbCustomers, timeLimit, labelLimit, useCplex, solomonInstances, options);
 			break;
 		case "LABEL":
-			Launcher.runLabelWriter(directory, nbCustomers, timeLimit, labelLimit, solomonInstances);
+			Launcher.runLabelWriter(directory, nbCustomers, timeLimit, labelLimit, solomonInstances, options);
 			break;
 		default:
 			System.err.println("Could not recognise problem");
@@ -0,0 +1,142 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the labels of a store in a list sorted by cost.
+ * Only the cheaper labels are checked as dominant and only the more expensive ones as dominated.
+ * @author pablo
+ *
+ */
+public class CostOrderedIndex implements LabelIndex {
+
+	/** The store holding the label data */
+	private LabelStore store;
+
+	/** Slots of the labels in increasing cost order */
+	private int[] order;
+
+	/** Number of labels */
+	private int size;
+
+	/**
+	 * @param store
+	 */
+	public CostOrderedIndex(LabelStore store) {
+		this.store = store;
+		this.order = new int[16];
+	}
+
+	@Override
+	public boolean isDominated(Resources resources) {
+		// Labels that cost no more than the resources may dominate them
+		int upper = this.upperBound(resources.getCost());
+		for( int position = 0; position < upper; position++ ) {
+			if( store.dominates(order[position], resources) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int removeDominated(Resources resources) {
+		// Labels that cost no less than the resources may be dominated by them
+		int kept = this.lowerBound(resources.getCost());
+		int removed = 0;
+		for( int position = kept; position < size; position++ ) {
+			int slot = order[position];
+			if( store.isDominatedBy(slot, resources) ) {
+				store.setRemoved(slot);
+				removed++;
+			}
+			else {
+				order[kept++] = slot;
+			}
+		}
+		size = kept;
+		return removed;
+	}
+
+	@Override
+	public void add(int slot) {
+		if( size == order.length ) {
+			order = Arrays.copyOf(order, 2 * order.length);
+		}
+
+		int position = this.upperBound(store.getCost(slot));
+
+		System.arraycopy(order, position, order, position + 1, size - position);
+		order[position] = slot;
+		size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int get(int position) {
+		return order[position];
+	}
+
+	@Override
+	public void truncate(int size) {
+		for( int position = size; position < this.size; position++ ) {
+			store.setRemoved(order[position]);
+		}
+		this.size = Math.min(this.size, size);
+	}
+
+	@Override
+	public void remove(int slot) {
+		// Only the labels with the same cost need to be checked
+		int position = this.lowerBound(store.getCost(slot));
+		while( order[position] != slot ) {
+			position++;
+		}
+
+		store.setRemoved(slot);
+		System.arraycopy(order, position + 1, order, position, size - position - 1);
+		size--;
+	}
+
+	/**
+	 * @param value
+	 * @return the first position whose label cost is not less than the value
+	 */
+	private int lowerBound(double value) {
+		int low = 0;
+		int high = size;
+		while( low < high ) {
+			int middle = (low + high) >>> 1;
+			if( store.getCost(order[middle]) < value ) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param value
+	 * @return the first position whose label cost is greater than the value
+	 */
+	private int upperBound(double value) {
+		int low = 0;
+		int high = size;
+		while( low < high ) {
+			int middle = (low + high) >>> 1;
+			if( store.getCost(order[middle]) <= value ) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
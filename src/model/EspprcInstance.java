@@ -18,9 +18,38 @@ public class EspprcInstance {
 	 * in the respective position */
 	private ArrayList<Customer>[] successors;
 	
-	/** The cost to go from node i to node j */
+	/** The ids of the successors of each node */
+	private int[][] successorIds;
+	
+	/** The successors of each node as bit vectors, packed 64 nodes per word */
+	private long[][] successorVectors;
+	
+	/** The latest time a label may have at node i to reach
+	 * its k-th successor within the time window */
+	private double[][] latestDepartures;
+	
+	/** The demand of each node */
+	private int[] demands;
+	
+	/** The ids of the predecessors of each node */
+	private int[][] predecessorIds;
+	
+	/** The earliest time the k-th predecessor of node j can reach it,
+	 * leaving at the start of its time window */
+	private double[][] earliestArrivals;
+	
+	/** The ng-neighbourhood of each node as bit vectors: the node itself and its nearest customers */
+	private long[][] ngNeighbourhoods;
+	
+	/** The cost to go from node i to node j before any dual value */
 	private double[][] cost;
 	
+	/**
+	 * The cost to go from node i to node j for the current dual values, a snapshot that never changes once built.
+	 * A pricer keeps the snapshot it starts with by solving an instance built with it
+	 */
+	private volatile ReducedCosts reducedCosts;
+	
 	/** The time to go from node i to node j */
 	private double[][] distance;
 	
@@ -45,13 +74,32 @@ public class EspprcInstance {
 	 */
 	public EspprcInstance(EspprcInstance instance) {
 		this.capacity = instance.getCapacity();
-		this.cost = instance.getCostMatrix().clone();
-		this.distance = instance.getDistanceMatrix().clone();
+		this.cost = instance.getCostMatrix();
+		this.distance = instance.getDistanceMatrix();
+		this.reducedCosts = instance.getReducedCosts();
 		this.duplicateOrigin = instance.isDuplicateOrigin();
 		this.name = instance.getName();
 		this.nbVehicles = instance.getVehicles();
 		this.nodes = instance.getNodes().clone();
 		this.successors = instance.getSuccessors().clone();
+		this.successorIds = instance.successorIds;
+		this.successorVectors = instance.successorVectors;
+		this.latestDepartures = instance.latestDepartures;
+		this.demands = instance.demands;
+		this.predecessorIds = instance.predecessorIds;
+		this.earliestArrivals = instance.earliestArrivals;
+		this.ngNeighbourhoods = instance.ngNeighbourhoods;
+	}
+	
+	/**
+	 * An instance sharing the nodes, distances and successors of the given one, with its own costs,
+	 * so a pricer can solve it while the given instance moves on to other dual values
+	 * @param instance
+	 * @param reducedCosts
+	 */
+	public EspprcInstance(EspprcInstance instance, ReducedCosts reducedCosts) {
+		this(instance);
+		this.reducedCosts = reducedCosts;
 	}
 
 	/**
@@ -74,7 +122,7 @@ public class EspprcInstance {
 		int result = 0;
 		for(int id = 0; id < successors.length ; id++) {
 			for(Customer successorNode : successors[id]) {
-				if(cost[id][successorNode.getId()] < 0) {
+				if(this.getCost(id, successorNode.getId()) < 0) {
 					result++;
 				}
 			}
@@ -135,6 +183,8 @@ public class EspprcInstance {
 			// The origin & the depot are the same
 			this.cost[0][nbNodes-1] = 0;
 		}
+		
+		this.reducedCosts = new ReducedCosts(this);
 	}
 	
 	/**
@@ -170,20 +220,138 @@ public class EspprcInstance {
 			this.successors[this.successors.length-1] = new ArrayList<Customer>();
 			this.successors[0].remove( this.successors[0].size()-1 );
 		}
+		
+		this.buildReachability();
+	}
+	
+	/**
+	 * Stock in primitive arrays what is needed to know which nodes a label can reach:
+	 * the successors of each node, the latest time to leave towards each of them
+	 * and the demand of each node. The predecessors of each node and the earliest time
+	 * to arrive from each of them are stocked for the labels extended backwards.
+	 */
+	private void buildReachability() {
+		this.successorIds = new int[this.nodes.length][];
+		this.successorVectors = new long[this.nodes.length][Resources.getNbWords(this.nodes.length)];
+		this.latestDepartures = new double[this.nodes.length][];
+		this.demands = new int[this.nodes.length];
+		
+		for(int i = 0; i < this.nodes.length; i++) {
+			Customer node = this.nodes[i];
+			this.demands[i] = node.getDemand();
+			
+			this.successorIds[i] = new int[this.successors[i].size()];
+			this.latestDepartures[i] = new double[this.successors[i].size()];
+			for(int k = 0; k < this.successors[i].size(); k++) {
+				Customer nextNode = this.successors[i].get(k);
+				this.successorIds[i][k] = nextNode.getId();
+				this.successorVectors[i][nextNode.getId() >>> 6] |= 1L << nextNode.getId();
+				this.latestDepartures[i][k] = this.getLatestDeparture(node, nextNode);
+			}
+		}
+		
+		int[] nbPredecessors = new int[this.nodes.length];
+		for(int i = 0; i < this.nodes.length; i++) {
+			for(int j : this.successorIds[i]) {
+				nbPredecessors[j]++;
+			}
+		}
+		
+		this.predecessorIds = new int[this.nodes.length][];
+		this.earliestArrivals = new double[this.nodes.length][];
+		for(int j = 0; j < this.nodes.length; j++) {
+			this.predecessorIds[j] = new int[nbPredecessors[j]];
+			this.earliestArrivals[j] = new double[nbPredecessors[j]];
+			nbPredecessors[j] = 0;
+		}
+		
+		for(int i = 0; i < this.nodes.length; i++) {
+			Customer node = this.nodes[i];
+			for(int j : this.successorIds[i]) {
+				int k = nbPredecessors[j]++;
+				this.predecessorIds[j][k] = i;
+				this.earliestArrivals[j][k] = node.getStart() + node.getServiceTime() + this.distance[i][j];
+			}
+		}
+	}
+	
+	/**
+	 * The latest time t at the node such that t + service + distance does not exceed the end
+	 * of the time window of the next node, computed the same way so both tests always agree
+	 * @param node
+	 * @param nextNode
+	 * @return
+	 */
+	private double getLatestDeparture(Customer node, Customer nextNode) {
+		double serviceTime = node.getServiceTime();
+		double arcDistance = this.distance[node.getId()][nextNode.getId()];
+		double end = nextNode.getEnd();
+		
+		// Bracket the subtraction to fix its rounding
+		double latest = end - serviceTime - arcDistance;
+		double gap = Math.ulp(end) + Math.ulp(latest);
+		double low = latest - gap;
+		double high = latest + gap;
+		while( low + serviceTime + arcDistance > end ) {
+			gap *= 2;
+			low = latest - gap;
+		}
+		while( high + serviceTime + arcDistance <= end ) {
+			gap *= 2;
+			high = latest + gap;
+		}
+		
+		// Bisection until both bounds are consecutive doubles
+		while( true ) {
+			double middle = low + (high - low) / 2;
+			if( middle <= low || middle >= high ) {
+				return low;
+			}
+			if( middle + serviceTime + arcDistance <= end ) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+	}
+	
+	/**
+	 * Build the ng-neighbourhood of each node (Baldacci R, Mingozzi A, Roberti R, 2011)
+	 * with the node itself and the given number of nearest customers
+	 * @param size number of customers in each neighbourhood besides the node itself
+	 */
+	public void buildNgNeighbourhoods(int size) {
+		int lastCustomer = this.duplicateOrigin ? this.nodes.length - 2 : this.nodes.length - 1;
+		
+		this.ngNeighbourhoods = new long[this.nodes.length][Resources.getNbWords(this.nodes.length)];
+		for(int i = 0; i < this.nodes.length; i++) {
+			this.ngNeighbourhoods[i][i >>> 6] |= 1L << i;
+			if( i == 0 || i > lastCustomer ) {
+				continue;
+			}
+			
+			// Pick the nearest customer not in the neighbourhood yet, size times
+			for(int k = 0; k < Math.min(size, lastCustomer - 1); k++) {
+				int nearest = -1;
+				for(int j = 1; j <= lastCustomer; j++) {
+					boolean chosen = (this.ngNeighbourhoods[i][j >>> 6] & (1L << j)) != 0;
+					if( !chosen && (nearest < 0 || this.distance[i][j] < this.distance[i][nearest]) ) {
+						nearest = j;
+					}
+				}
+				this.ngNeighbourhoods[i][nearest >>> 6] |= 1L << nearest;
+			}
+		}
 	}
 	
 	/**
-	 * Given the dual values, it updates the cost of an edge
-	 * for the VRPTW sub-problem
+	 * Given the dual values, it replaces the costs of the edges
+	 * for the VRPTW sub-problem by a new snapshot, the previous one being left unchanged
 	 * @param pi The dual variables
 	 */
 	public void updateDualValues(double[] pi, double pc) {
-		int duplicated = duplicateOrigin ? 1 : 0;
-        for (int i = 1; i < this.getNbNodes() - duplicated; i++) {
-            for (int j = 0; j < this.getNbNodes(); j++) {
-          	  this.cost[i][j] = this.distance[i][j] - pi[i-1] - pc;
-            }
-        }
+		this.reducedCosts = new ReducedCosts(this, pi, pc);
 	}
 	
 	/**
@@ -225,6 +393,8 @@ public class EspprcInstance {
 				}
 			}
 		}
+		
+		this.buildReachability();
 	}
 
 	/**
@@ -246,7 +416,7 @@ public class EspprcInstance {
 	public void printCostMatrix() {
 		for( int i = 0; i < cost.length; i++ ) {
 			for( int j= 0; j < cost[i].length; j++ ) {
-				System.out.print( Math.floor(cost[i][j]*10)/10+" ");
+				System.out.print( Math.floor(this.getCost(i, j)*10)/10+" ");
 			}
 			System.out.println("");
 		}
@@ -283,12 +453,27 @@ public class EspprcInstance {
 		this.nbVehicles = vehicles;
 	}
 
+	/**
+	 * @return the costs of the edges before any dual value, see {@link #getCost(int, int)} for the reduced ones
+	 */
 	public double[][] getCostMatrix() {
 		return cost;
 	}
 	
+	/**
+	 * @param i
+	 * @param j
+	 * @return the cost to go from node i to node j for the current dual values
+	 */
 	public double getCost(int i, int j) {
-		return cost[i][j];
+		if( reducedCosts == null ) {
+			throw new IllegalStateException("The edges of instance " + name + " must be built before reading their costs");
+		}
+		return reducedCosts.getCost(i, j);
+	}
+	
+	public ReducedCosts getReducedCosts() {
+		return reducedCosts;
 	}
 
 	public double[][] getDistanceMatrix() {
@@ -311,6 +496,85 @@ public class EspprcInstance {
 		return successors;
 	}
 	
+	/**
+	 * @param i
+	 * @return the ids of the successors of node i
+	 */
+	public int[] getSuccessorIds(int i) {
+		return successorIds[i];
+	}
+	
+	/**
+	 * @param i
+	 * @return the successors of node i as a bit vector
+	 */
+	public long[] getSuccessorVector(int i) {
+		return successorVectors[i];
+	}
+	
+	/**
+	 * @param i
+	 * @return the latest time to leave node i towards each of its successors
+	 */
+	public double[] getLatestDepartures(int i) {
+		return latestDepartures[i];
+	}
+	
+	/**
+	 * @param j
+	 * @return the ids of the nodes having node j as successor
+	 */
+	public int[] getPredecessorIds(int j) {
+		return predecessorIds[j];
+	}
+	
+	/**
+	 * @param j
+	 * @return the earliest time each predecessor of node j can reach it
+	 */
+	public double[] getEarliestArrivals(int j) {
+		return earliestArrivals[j];
+	}
+
+	/**
+	 * @return the shortest positive time between leaving a node and arriving at one of its successors,
+	 * service time included, 0 if there is none
+	 */
+	public double getShortestMove() {
+		double shortestMove = Double.MAX_VALUE;
+		for(int i = 0; i < this.getNbNodes(); i++) {
+			for(int j : successorIds[i]) {
+				double move = nodes[i].getServiceTime() + distance[i][j];
+				if( move > 0 ) {
+					shortestMove = Math.min( shortestMove, move );
+				}
+			}
+		}
+		return shortestMove == Double.MAX_VALUE ? 0 : shortestMove;
+	}
+
+	/**
+	 * @return the latest end of the time windows of the nodes
+	 */
+	public double getHorizon() {
+		double horizon = 0;
+		for(Customer node : nodes) {
+			horizon = Math.max( horizon, node.getEnd() );
+		}
+		return horizon;
+	}
+
+	/**
+	 * @return the ng-neighbourhood of each node as bit vectors, null if they have not been built
+	 */
+	public long[][] getNgNeighbourhoods() {
+		return ngNeighbourhoods;
+	}
+	
+	public int[] getDemands() {
+		return demands;
+	}
+	
 	public boolean isDuplicateOrigin() {
 		return duplicateOrigin;
 	}
@@ -69,9 +69,10 @@ public class Label implements Comparable<Label>{
 	}
 	
 	/**
+	 * The other label is not marked as dominated, so labels may be compared from several threads
 	 * 
 	 * @param label
-	 * @return
+	 * @return true if the current label dominates the other one
 	 */
 	public boolean dominates(Label label) {
 		// Check if labels are comparable
@@ -79,13 +80,7 @@ public class Label implements Comparable<Label>{
 			return false;
 		}
 		
-		if( !this.resources.lessThan( label.getResources() ) ) {
-			return false;
-		}
-		
-		// If we have not broke, the current label dominates the other
-		label.setDominated(true);
-		return true;
+		return this.resources.lessThan( label.getResources() );
 	}
 	
 	/**
@@ -166,6 +161,20 @@ public class Label implements Comparable<Label>{
 		return previousLabel.getVisitTime(nodeId);
 	}
 	
+	/**
+	 * Count the visits of the path to a node, which may be more than one
+	 * when the labels only remember part of their visits
+	 * @param nodeId
+	 * @return
+	 */
+	public int getNbVisits(int nodeId) {
+		int visits = current.getId() == nodeId ? 1 : 0;
+		if(previousLabel == null) {
+			return visits;
+		}
+		return visits + previousLabel.getNbVisits(nodeId);
+	}
+	
 	/**
 	 * Check if both paths are equal
 	 * @param route
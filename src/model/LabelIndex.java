@@ -0,0 +1,53 @@
+package model;
+
+/**
+ * The non dominated labels of a label store, referenced by their slots.
+ * Implementations answer the dominance queries of the EFF method
+ * and list the labels by increasing cost. Every label they drop is reported to the store.
+ * @author pablo
+ *
+ */
+public interface LabelIndex {
+
+	/**
+	 * @param resources
+	 * @return true if one of the labels dominates the resources
+	 */
+	public boolean isDominated(Resources resources);
+
+	/**
+	 * Remove the labels dominated by the resources
+	 * @param resources
+	 * @return number of removed labels
+	 */
+	public int removeDominated(Resources resources);
+
+	/**
+	 * Add the label of a slot keeping the cost order
+	 * @param slot
+	 */
+	public void add(int slot);
+
+	/**
+	 * @return number of labels
+	 */
+	public int size();
+
+	/**
+	 * @param position
+	 * @return the slot of the label at the given position of the cost order
+	 */
+	public int get(int position);
+
+	/**
+	 * Remove the most expensive labels until the index has the given size
+	 * @param size
+	 */
+	public void truncate(int size);
+
+	/**
+	 * Remove the label of a slot
+	 * @param slot
+	 */
+	public void remove(int slot);
+}
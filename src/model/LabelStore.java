@@ -0,0 +1,525 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The labels of a single node stored as parallel primitive arrays.
+ * A label lives in a slot which never moves, so the labels extended from it
+ * can reference it by its index. The non dominated labels are kept in a label index.
+ * @author pablo
+ *
+ */
+public class LabelStore {
+
+	/** Initial number of slots */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Number of extended labels from which a batch is checked in parallel */
+	private static final int PARALLEL_BATCH_SIZE = 256;
+
+	/** Number of extended labels checked by a single task */
+	private static final int DOMINANCE_CHUNK_SIZE = 32;
+
+	/** The node where every label of the store ends */
+	private Customer node;
+
+	/** Number of nodes of the instance */
+	private int nbNodes;
+
+	/** Number of 64 bit words of a node vector */
+	private int nbWords;
+
+	/** Number of slots in use */
+	private int nbSlots;
+
+	private double[] cost;
+
+	private double[] time;
+
+	private double[] demand;
+
+	private double[] startTime;
+
+	private int[] nbVisitedNodes;
+
+	private int[] nbUnreachableNodes;
+
+	/** The node of the label used to build each label, -1 for the origin */
+	private int[] parentNode;
+
+	/** The slot of the label used to build each label, -1 for the origin */
+	private int[] parentIndex;
+
+	/** Visited nodes of every label, nbWords per slot */
+	private long[] visitationMatrix;
+
+	/** Unreachable nodes of every label, nbWords per slot */
+	private long[] unreachableMatrix;
+
+	/** If the label has been dominated or dropped by the label limit or the beam */
+	private boolean[] removed;
+
+	/** First slot whose label has not been extended yet, every later slot is newer */
+	private int firstNewSlot;
+
+	/** The non dominated labels */
+	private LabelIndex index;
+
+	/** Label objects already built from each slot */
+	private Label[] builtLabels;
+
+	/**
+	 * Create an empty store for the given node keeping its labels in a cost ordered list
+	 * @param node
+	 * @param nbNodes number of nodes of the instance
+	 */
+	public LabelStore(Customer node, int nbNodes) {
+		this(node, nbNodes, false);
+	}
+
+	/**
+	 * Create an empty store for the given node
+	 * @param node
+	 * @param nbNodes number of nodes of the instance
+	 * @param useSkyline set to "true" to index the labels with a skyline instead of a cost ordered list
+	 */
+	public LabelStore(Customer node, int nbNodes, boolean useSkyline) {
+		this.node = node;
+		this.nbNodes = nbNodes;
+		this.nbWords = Resources.getNbWords(nbNodes);
+
+		cost = new double[INITIAL_CAPACITY];
+		time = new double[INITIAL_CAPACITY];
+		demand = new double[INITIAL_CAPACITY];
+		startTime = new double[INITIAL_CAPACITY];
+		nbVisitedNodes = new int[INITIAL_CAPACITY];
+		nbUnreachableNodes = new int[INITIAL_CAPACITY];
+		parentNode = new int[INITIAL_CAPACITY];
+		parentIndex = new int[INITIAL_CAPACITY];
+		visitationMatrix = new long[INITIAL_CAPACITY * nbWords];
+		unreachableMatrix = new long[INITIAL_CAPACITY * nbWords];
+		removed = new boolean[INITIAL_CAPACITY];
+
+		index = useSkyline ? new SkylineIndex(this) : new CostOrderedIndex(this);
+	}
+
+	/**
+	 * Check dominance between the extended resources and the labels of the store.
+	 * Dominated labels are removed and the extended resources are stored if they are not dominated.
+	 * Since the store never holds a label dominated by another one,
+	 * the extended label cannot be dominated once it dominates a label.
+	 *
+	 * @param extendedResources
+	 * @param previousNode the node of the label that was extended
+	 * @param previousIndex the slot of the label that was extended
+	 * @return true if the non dominated labels have changed
+	 */
+	public boolean insert(Resources extendedResources, int previousNode, int previousIndex) {
+		if( index.isDominated(extendedResources) ) {
+			return false;
+		}
+
+		index.removeDominated(extendedResources);
+
+		int slot = this.addSlot(extendedResources, previousNode, previousIndex);
+		index.add(slot);
+
+		return true;
+	}
+
+	/**
+	 * Insert a batch of extended labels, giving the same labels in the same slots as inserting them one by one.
+	 * Since dominance is transitive, an extended label is dominated when it is inserted if and only if a label
+	 * of the store or an earlier extended label dominates it. These checks only read the labels,
+	 * so on large batches they are split between the tasks of the pool, and the extended labels
+	 * found non dominated are then inserted in order.
+	 *
+	 * @param batch the extended labels
+	 * @param nbLabels number of extended labels in the batch
+	 * @param previousNode the node of the labels that were extended
+	 * @param previousIndexes the slot of the label each extended label comes from
+	 * @param slots receives the slot of each extended label, -1 if it is dominated
+	 * @param pool pool running the dominance checks, null to run them in the calling thread
+	 * @return number of stored labels
+	 */
+	public int insertAll(Resources[] batch, int nbLabels, int previousNode, int[] previousIndexes, int[] slots, ForkJoinPool pool) {
+		int nbStored = 0;
+
+		if( pool == null || nbLabels < PARALLEL_BATCH_SIZE ) {
+			for( int l = 0; l < nbLabels; l++ ) {
+				slots[l] = this.insert(batch[l], previousNode, previousIndexes[l]) ? nbSlots - 1 : -1;
+				if( slots[l] >= 0 ) {
+					nbStored++;
+				}
+			}
+			return nbStored;
+		}
+
+		// Extended labels dominated by a label of the store
+		boolean[] dominated = new boolean[nbLabels];
+		pool.invoke( new DominanceTask(batch, null, 0, nbLabels, dominated) );
+
+		// The others may only be dominated by an earlier one of them
+		int[] candidates = new int[nbLabels];
+		int nbCandidates = 0;
+		for( int l = 0; l < nbLabels; l++ ) {
+			if( !dominated[l] ) {
+				candidates[nbCandidates++] = l;
+			}
+		}
+		candidates = Arrays.copyOf(candidates, nbCandidates);
+		pool.invoke( new DominanceTask(batch, candidates, 0, nbCandidates, dominated) );
+
+		for( int l = 0; l < nbLabels; l++ ) {
+			if( dominated[l] ) {
+				slots[l] = -1;
+				continue;
+			}
+
+			index.removeDominated(batch[l]);
+			slots[l] = this.addSlot(batch[l], previousNode, previousIndexes[l]);
+			index.add(slots[l]);
+			nbStored++;
+		}
+
+		return nbStored;
+	}
+
+	/**
+	 * Marks the extended labels of a range dominated, either by a label of the store,
+	 * or by an earlier candidate when the range is one of the candidates
+	 */
+	private class DominanceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private Resources[] batch;
+
+		/** Positions in the batch of the extended labels not dominated by the store, null to check the whole batch against the store */
+		private int[] candidates;
+
+		private int from;
+
+		private int to;
+
+		/** Each task only writes the flags of its range */
+		private boolean[] dominated;
+
+		DominanceTask(Resources[] batch, int[] candidates, int from, int to, boolean[] dominated) {
+			this.batch = batch;
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.dominated = dominated;
+		}
+
+		@Override
+		protected void compute() {
+			if( to - from > DOMINANCE_CHUNK_SIZE ) {
+				int middle = (from + to) >>> 1;
+				invokeAll( new DominanceTask(batch, candidates, from, middle, dominated),
+						new DominanceTask(batch, candidates, middle, to, dominated) );
+				return;
+			}
+
+			for( int position = from; position < to; position++ ) {
+				if( candidates == null ) {
+					dominated[position] = index.isDominated(batch[position]);
+					continue;
+				}
+
+				Resources resources = batch[candidates[position]];
+				for( int earlier = 0; earlier < position; earlier++ ) {
+					if( batch[candidates[earlier]].lessThan(resources) ) {
+						dominated[candidates[position]] = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the most expensive labels so the store does not exceed the label limit
+	 *
+	 * @param labelLimit no limit if it is not positive
+	 */
+	public void applyLabelLimit(int labelLimit) {
+		if( labelLimit > 0 && index.size() > labelLimit ) {
+			index.truncate(labelLimit);
+		}
+	}
+
+	/**
+	 * Drop a non dominated label, as a heuristic
+	 * @param slot
+	 */
+	public void remove(int slot) {
+		index.remove(slot);
+	}
+
+	/**
+	 * Copy the label of the given slot into the resources
+	 * @param slot
+	 * @param resources built for an instance with the same number of nodes
+	 */
+	public void load(int slot, Resources resources) {
+		resources.setValues(cost[slot], time[slot], demand[slot], startTime[slot],
+				nbVisitedNodes[slot], nbUnreachableNodes[slot]);
+		System.arraycopy(visitationMatrix, slot * nbWords, resources.getVisitationVector(), 0, nbWords);
+		System.arraycopy(unreachableMatrix, slot * nbWords, resources.getUnreachableVector(), 0, nbWords);
+	}
+
+	/**
+	 * If the label in the given slot dominates the resources
+	 */
+	boolean dominates(int slot, Resources resources) {
+		if( cost[slot] > resources.getCost() ||
+			nbUnreachableNodes[slot] > resources.getNbUnreachableNodes() ||
+			time[slot] > resources.getTime() ||
+			demand[slot] > resources.getDemand() )
+		{
+			return false;
+		}
+
+		long[] unreachable = resources.getUnreachableVector();
+		int offset = slot * nbWords;
+		for( int k = 0; k < nbWords; k++ ) {
+			if( (unreachableMatrix[offset + k] & ~unreachable[k]) != 0 ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * If the label in the given slot is dominated by the resources
+	 */
+	boolean isDominatedBy(int slot, Resources resources) {
+		if( resources.getCost() > cost[slot] ||
+			resources.getNbUnreachableNodes() > nbUnreachableNodes[slot] ||
+			resources.getTime() > time[slot] ||
+			resources.getDemand() > demand[slot] )
+		{
+			return false;
+		}
+
+		long[] unreachable = resources.getUnreachableVector();
+		int offset = slot * nbWords;
+		for( int k = 0; k < nbWords; k++ ) {
+			if( (unreachable[k] & ~unreachableMatrix[offset + k]) != 0 ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Write the resources in a new slot
+	 * @return the slot
+	 */
+	private int addSlot(Resources resources, int previousNode, int previousIndex) {
+		if( nbSlots == cost.length ) {
+			this.grow();
+		}
+
+		int slot = nbSlots++;
+		cost[slot] = resources.getCost();
+		time[slot] = resources.getTime();
+		demand[slot] = resources.getDemand();
+		startTime[slot] = resources.getStartTime();
+		nbVisitedNodes[slot] = resources.getNbVisitedNodes();
+		nbUnreachableNodes[slot] = resources.getNbUnreachableNodes();
+		parentNode[slot] = previousNode;
+		parentIndex[slot] = previousIndex;
+		System.arraycopy(resources.getVisitationVector(), 0, visitationMatrix, slot * nbWords, nbWords);
+		System.arraycopy(resources.getUnreachableVector(), 0, unreachableMatrix, slot * nbWords, nbWords);
+
+		return slot;
+	}
+
+	/**
+	 * Double the number of available slots
+	 */
+	private void grow() {
+		int capacity = 2 * cost.length;
+
+		cost = Arrays.copyOf(cost, capacity);
+		time = Arrays.copyOf(time, capacity);
+		demand = Arrays.copyOf(demand, capacity);
+		startTime = Arrays.copyOf(startTime, capacity);
+		nbVisitedNodes = Arrays.copyOf(nbVisitedNodes, capacity);
+		nbUnreachableNodes = Arrays.copyOf(nbUnreachableNodes, capacity);
+		parentNode = Arrays.copyOf(parentNode, capacity);
+		parentIndex = Arrays.copyOf(parentIndex, capacity);
+		visitationMatrix = Arrays.copyOf(visitationMatrix, capacity * nbWords);
+		unreachableMatrix = Arrays.copyOf(unreachableMatrix, capacity * nbWords);
+		removed = Arrays.copyOf(removed, capacity);
+	}
+
+	// ===== LABEL ADAPTER =====
+
+	/**
+	 * Build the label stored in the given slot, together with the labels it was extended from
+	 *
+	 * @param slot
+	 * @param stores the stores of every node of the instance
+	 * @return
+	 */
+	public Label getLabel(int slot, LabelStore[] stores) {
+		if( builtLabels == null || builtLabels.length < nbSlots ) {
+			builtLabels = builtLabels == null ? new Label[nbSlots] : Arrays.copyOf(builtLabels, nbSlots);
+		}
+
+		if( builtLabels[slot] == null ) {
+			Resources resources = new Resources(nbNodes);
+			this.load(slot, resources);
+
+			Label label = new Label(node);
+			label.setResources(resources);
+			label.setExtended(this.isExtended(slot));
+			if( parentNode[slot] >= 0 ) {
+				label.setPreviousLabel( stores[parentNode[slot]].getLabel(parentIndex[slot], stores) );
+			}
+
+			builtLabels[slot] = label;
+		}
+
+		return builtLabels[slot];
+	}
+
+	/**
+	 * Build the non dominated labels of the store
+	 *
+	 * @param stores the stores of every node of the instance
+	 * @return the labels in increasing cost order
+	 */
+	public ArrayList<Label> getLabels(LabelStore[] stores) {
+		ArrayList<Label> labels = new ArrayList<Label>(index.size());
+		for( int position = 0; position < index.size(); position++ ) {
+			labels.add( this.getLabel(index.get(position), stores) );
+		}
+		return labels;
+	}
+
+	// ===== GETTERS & SETTERS =====
+
+	public Customer getNode() {
+		return node;
+	}
+
+	public int getNbNodes() {
+		return nbNodes;
+	}
+
+	/**
+	 * @return number of non dominated labels
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @param position
+	 * @return the slot of the non dominated label at the given position of the cost order
+	 */
+	public int getIndex(int position) {
+		return index.get(position);
+	}
+
+	public double getCost(int slot) {
+		return cost[slot];
+	}
+
+	public double getTime(int slot) {
+		return time[slot];
+	}
+
+	public double getDemand(int slot) {
+		return demand[slot];
+	}
+
+	public int getNbUnreachableNodes(int slot) {
+		return nbUnreachableNodes[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @return the node of the label the given one was extended from, -1 for the origin
+	 */
+	public int getParentNode(int slot) {
+		return parentNode[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @return the slot of the label the given one was extended from, -1 for the origin
+	 */
+	public int getParentIndex(int slot) {
+		return parentIndex[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @param word
+	 * @return the given 64 bit word of the visitation vector of the label in the slot
+	 */
+	public long getVisitationWord(int slot, int word) {
+		return visitationMatrix[slot * nbWords + word];
+	}
+
+	/**
+	 * @param slot
+	 * @param word
+	 * @return the given 64 bit word of the unreachable vector of the label in the slot
+	 */
+	public long getUnreachableWord(int slot, int word) {
+		return unreachableMatrix[slot * nbWords + word];
+	}
+
+	public boolean isReachable(int slot, int nodeId) {
+		return (unreachableMatrix[slot * nbWords + (nodeId >>> 6)] & (1L << nodeId)) == 0;
+	}
+
+	/**
+	 * @return number of slots in use, the ones of removed labels included
+	 */
+	public int getNbSlots() {
+		return nbSlots;
+	}
+
+	/**
+	 * @return first slot whose label has not been extended yet
+	 */
+	public int getFirstNewSlot() {
+		return firstNewSlot;
+	}
+
+	/**
+	 * Set every label stored until now as extended
+	 */
+	public void setExtended() {
+		firstNewSlot = nbSlots;
+	}
+
+	public boolean isExtended(int slot) {
+		return slot < firstNewSlot;
+	}
+
+	public boolean isRemoved(int slot) {
+		return removed[slot];
+	}
+
+	/**
+	 * Called by the index when it drops the label of a slot
+	 * @param slot
+	 */
+	void setRemoved(int slot) {
+		removed[slot] = true;
+	}
+}
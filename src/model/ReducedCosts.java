@@ -0,0 +1,78 @@
+package model;
+
+/**
+ * The arc costs of the pricing problem for the dual values of one iteration of the column generation.
+ * The cost of an arc leaving a customer is its distance minus the dual values of the customer
+ * and of the vehicle constraint, while the arcs leaving the origin keep the cost of the instance.
+ * The reduced rows are computed once when the snapshot is built, the other rows being the ones of the instance,
+ * so reading a cost is a single array access. A snapshot never changes once built, so pricers may read
+ * different snapshots of the same instance from several threads.
+ * @author pablo
+ *
+ */
+public final class ReducedCosts {
+
+	/** The cost to go from node i to node j, the rows of the nodes whose arcs are not reduced being shared with the instance */
+	private final double[][] costs;
+
+	/** The dual value of the covering constraint of each node, 0 for the nodes whose arcs are not reduced */
+	private final double[] duals;
+
+	/** The dual value of the vehicle constraint */
+	private final double capacityDual;
+
+	/**
+	 * The costs of the instance, without dual values
+	 * @param instance
+	 */
+	public ReducedCosts(EspprcInstance instance) {
+		this.costs = instance.getCostMatrix();
+		this.duals = new double[instance.getNbNodes()];
+		this.capacityDual = 0;
+	}
+
+	/**
+	 * The costs of the instance reduced by the dual values of the customers and of the vehicle constraint
+	 * @param instance
+	 * @param pi the dual value of each customer, the first one being the one of node 1
+	 * @param pc the dual value of the vehicle constraint
+	 */
+	public ReducedCosts(EspprcInstance instance, double[] pi, double pc) {
+		this.costs = instance.getCostMatrix().clone();
+		this.duals = new double[instance.getNbNodes()];
+		this.capacityDual = pc;
+
+		double[][] distance = instance.getDistanceMatrix();
+		int duplicated = instance.isDuplicateOrigin() ? 1 : 0;
+		for(int i = 1; i < instance.getNbNodes() - duplicated; i++) {
+			this.duals[i] = pi[i-1];
+
+			double[] row = new double[distance[i].length];
+			for(int j = 0; j < row.length; j++) {
+				row[j] = distance[i][j] - duals[i] - pc;
+			}
+			this.costs[i] = row;
+		}
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return the reduced cost to go from node i to node j
+	 */
+	public double getCost(int i, int j) {
+		return costs[i][j];
+	}
+
+	/**
+	 * @param i
+	 * @return the dual value of the covering constraint of the node, 0 if its arcs are not reduced
+	 */
+	public double getDual(int i) {
+		return duals[i];
+	}
+
+	public double getCapacityDual() {
+		return capacityDual;
+	}
+}
@@ -16,9 +16,9 @@ public class Resources implements Comparable<Resources>{
 	private int nbVisitedNodes;
 	
 	/**
-	 * Nodes visited from the origin the current node
+	 * Nodes visited from the origin the current node, packed 64 nodes per word
 	 */
-	private boolean[] visitationVector;
+	private long[] visitationVector;
 
 	/**
 	 * Number of unreachable nodes
@@ -26,24 +26,38 @@ public class Resources implements Comparable<Resources>{
 	private int nbUnreachableNodes;
 	
 	/**
-	 * Vector showing which nodes are unreachable (true) and those who are not (false)
+	 * Bit vector showing which nodes are unreachable (set) and those who are not (unset),
+	 * packed 64 nodes per word
 	 */
-	private boolean[] unreachableVector;
+	private long[] unreachableVector;
 
 	/**
 	 * Initialize the origin resources
 	 * @param instance
 	 */
 	public Resources(EspprcInstance instance) {
-		unreachableVector = new boolean[instance.getNbNodes()];
-		unreachableVector[0] = instance.isDuplicateOrigin();
+		unreachableVector = new long[getNbWords( instance.getNbNodes() )];
+		if( instance.isDuplicateOrigin() ) {
+			unreachableVector[0] = 1L;
+		}
 		nbUnreachableNodes = 1;
 		
-		visitationVector = new boolean[instance.getNbNodes()];
-		visitationVector[0] = instance.isDuplicateOrigin();
+		visitationVector = new long[getNbWords( instance.getNbNodes() )];
+		if( instance.isDuplicateOrigin() ) {
+			visitationVector[0] = 1L;
+		}
 		nbVisitedNodes = 1;
 	}
 	
+	/**
+	 * Initialize empty resources for an instance with the given number of nodes
+	 * @param nbNodes
+	 */
+	Resources(int nbNodes) {
+		unreachableVector = new long[getNbWords( nbNodes )];
+		visitationVector = new long[getNbWords( nbNodes )];
+	}
+	
 	/**
 	 * Create a copy of the given resources
 	 * @param resources
@@ -56,7 +70,34 @@ public class Resources implements Comparable<Resources>{
 		nbVisitedNodes = resources.getNbVisitedNodes();
 		nbUnreachableNodes = resources.getNbUnreachableNodes();
 		visitationVector = resources.getVisitationVector().clone();
-		unreachableVector = new boolean[visitationVector.length];
+		unreachableVector = resources.getUnreachableVector().clone();
+	}
+	
+	/**
+	 * Overwrite these resources with the given ones, reusing the allocated vectors
+	 * @param resources
+	 */
+	public void copyFrom(Resources resources) {
+		cost = resources.getCost();
+		time = resources.getTime();
+		demand = resources.getDemand();
+		startTime = resources.getStartTime();
+		nbVisitedNodes = resources.getNbVisitedNodes();
+		nbUnreachableNodes = resources.getNbUnreachableNodes();
+		System.arraycopy(resources.getVisitationVector(), 0, visitationVector, 0, visitationVector.length);
+		System.arraycopy(resources.getUnreachableVector(), 0, unreachableVector, 0, unreachableVector.length);
+	}
+	
+	/**
+	 * Set every scalar resource at once, node vectors are left untouched
+	 */
+	void setValues(double cost, double time, double demand, double startTime, int nbVisitedNodes, int nbUnreachableNodes) {
+		this.cost = cost;
+		this.time = time;
+		this.demand = demand;
+		this.startTime = startTime;
+		this.nbVisitedNodes = nbVisitedNodes;
+		this.nbUnreachableNodes = nbUnreachableNodes;
 	}
 	
 	/**
@@ -106,10 +147,10 @@ public class Resources implements Comparable<Resources>{
 			return false;
 		}
 
-		// Check unreachable nodes one by one
-		boolean[] externalUnreachableVector = resources.getUnreachableVector();
+		// Check unreachable nodes 64 at a time: ours must be a subset of theirs
+		long[] externalUnreachableVector = resources.getUnreachableVector();
 		for(int k = 0; k < this.unreachableVector.length; k++) {
-			if( this.unreachableVector[k] && !externalUnreachableVector[k] ) {
+			if( (this.unreachableVector[k] & ~externalUnreachableVector[k]) != 0 ) {
 				return false;
 			}
 		}
@@ -125,6 +166,19 @@ public class Resources implements Comparable<Resources>{
 	 * @return
 	 */
 	public void extendResources(EspprcInstance instance, Customer previousNode, Customer currentNode) {
+		this.extendResources(instance, previousNode, currentNode, null);
+	}
+	
+	/**
+	 * Extend the resources from the previousNode to the currentNode,
+	 * only remembering the visits to the nodes of the given memory
+	 * @param instance
+	 * @param previousNode
+	 * @param currentNode
+	 * @param memory the nodes whose visit is remembered at the currentNode, such as its ng-neighbourhood,
+	 * every visit is remembered if it is null
+	 */
+	public void extendResources(EspprcInstance instance, Customer previousNode, Customer currentNode, long[] memory) {
 		double arcCost = instance.getCost( previousNode.getId(), currentNode.getId() );
 		double arcDistance = instance.getDistance( previousNode.getId(), currentNode.getId() );
 		
@@ -149,6 +203,9 @@ public class Resources implements Comparable<Resources>{
 		
 		// Update visited nodes
 		if(currentNode.getId() != 0) {
+			if( memory != null ) {
+				this.forgetVisits(memory);
+			}
 			this.updateVisitationVector(currentNode);
 		}
 		
@@ -156,31 +213,136 @@ public class Resources implements Comparable<Resources>{
 		this.updateUnreachableNodes(instance, currentNode);		
 	}
 	
+	/**
+	 * Set the resources of a label going backwards from the depot.
+	 * Backward resources keep the opposite of the latest time the service may start
+	 * at the node as time, so that a lower time is still better when checking dominance.
+	 * @param instance
+	 * @param depot
+	 */
+	public void setBackwardOrigin(EspprcInstance instance, Customer depot) {
+		this.cost = 0;
+		this.time = -depot.getEnd();
+		this.demand = depot.getDemand();
+		this.startTime = 0;
+		
+		for(int k = 0; k < visitationVector.length; k++) {
+			visitationVector[k] = 0;
+		}
+		nbVisitedNodes = 0;
+		this.updateVisitationVector(depot);
+		
+		this.updateUnreachablePredecessors(instance, depot);
+	}
+	
+	/**
+	 * Extend backward resources from the currentNode to one of its predecessors,
+	 * the previousNode
+	 * @param instance
+	 * @param previousNode
+	 * @param currentNode
+	 */
+	public void extendResourcesBackward(EspprcInstance instance, Customer previousNode, Customer currentNode) {
+		double arcCost = instance.getCost( previousNode.getId(), currentNode.getId() );
+		double arcDistance = instance.getDistance( previousNode.getId(), currentNode.getId() );
+		
+		// The service at the previous node must end in time to start the one at the current node
+		double latestStart = -this.time - previousNode.getServiceTime() - arcDistance;
+		this.setTime( -Math.min( previousNode.getEnd(), latestStart ) );
+		
+		this.addCost( arcCost );
+		this.addDemand( previousNode.getDemand() );
+		this.updateVisitationVector( previousNode );
+		
+		this.updateUnreachablePredecessors( instance, previousNode );
+	}
+	
+	/**
+	 * Update the unreachable nodes of backward resources at the currentNode:
+	 * a predecessor is reachable if it is not visited, its demand fits
+	 * and it can be left early enough to arrive before the latest start.
+	 * The origin is never reached backwards.
+	 * @param instance
+	 * @param currentNode
+	 */
+	public void updateUnreachablePredecessors(EspprcInstance instance, Customer currentNode) {
+		for(int k = 0; k < unreachableVector.length; k++) {
+			unreachableVector[k] = -1L;
+		}
+		unreachableVector[unreachableVector.length - 1] >>>= (-instance.getNbNodes() & 63);
+		
+		int[] predecessorIds = instance.getPredecessorIds( currentNode.getId() );
+		double[] earliestArrivals = instance.getEarliestArrivals( currentNode.getId() );
+		int[] demands = instance.getDemands();
+		double capacity = instance.getCapacity();
+		
+		for(int k = 0; k < predecessorIds.length; k++) {
+			int i = predecessorIds[k];
+			
+			if( i != 0 && earliestArrivals[k] <= -this.time && this.demand + demands[i] <= capacity &&
+				(visitationVector[i >>> 6] & (1L << i)) == 0 ) {
+				unreachableVector[i >>> 6] &= ~(1L << i);
+			}
+		}
+		
+		nbUnreachableNodes = 0;
+		for(int k = 0; k < unreachableVector.length; k++) {
+			nbUnreachableNodes += Long.bitCount( unreachableVector[k] );
+		}
+	}
+	
 	/**
 	 * Update the unreachable nodes from the currentNode
-	 * taking into account current reasources
+	 * taking into account current reasources.
+	 * A node that is not a successor of the currentNode cannot be reached in time,
+	 * so only the successors are checked.
 	 * @param instance
 	 * @param currentNode
 	 */
 	public void updateUnreachableNodes(EspprcInstance instance, Customer currentNode) {
-		// We update unreachable nodes
-		nbUnreachableNodes = 0;
-		for(int i = 0; i < instance.getNbNodes(); i++) {
-			if( currentNode.isDepot() ) {
-				unreachableVector[i] = true;
-				nbUnreachableNodes++;
-				continue;
-			}
-			
-			double timeToReach = this.time + currentNode.getServiceTime() + instance.getDistance(currentNode.getId(), i);
-			double neededDemand = this.demand + instance.getNode(i).getDemand();
+		// Every node is unreachable until proven otherwise
+		for(int k = 0; k < unreachableVector.length; k++) {
+			unreachableVector[k] = -1L;
+		}
+		unreachableVector[unreachableVector.length - 1] >>>= (-instance.getNbNodes() & 63);
+		
+		// Nothing is reachable from the depot
+		if( currentNode.isDepot() ) {
+			nbUnreachableNodes = instance.getNbNodes();
+			return;
+		}
+		
+		int[] successorIds = instance.getSuccessorIds( currentNode.getId() );
+		double[] latestDepartures = instance.getLatestDepartures( currentNode.getId() );
+		int[] demands = instance.getDemands();
+		double capacity = instance.getCapacity();
+		
+		for(int k = 0; k < successorIds.length; k++) {
+			int i = successorIds[k];
 			
-			boolean unreachable = ( instance.getNode(i).getEnd() < timeToReach || instance.getCapacity() < neededDemand );
-			if ( visitationVector[i] || unreachable ) {
-				unreachableVector[i] = true;
-				nbUnreachableNodes++;
+			// Visited nodes are always unreachable
+			if( this.time <= latestDepartures[k] && this.demand + demands[i] <= capacity &&
+				(visitationVector[i >>> 6] & (1L << i)) == 0 ) {
+				unreachableVector[i >>> 6] &= ~(1L << i);
 			}
 		}
+		
+		// We update unreachable nodes
+		nbUnreachableNodes = 0;
+		for(int k = 0; k < unreachableVector.length; k++) {
+			nbUnreachableNodes += Long.bitCount( unreachableVector[k] );
+		}
+	}
+	
+	/**
+	 * Forget the visits to the nodes out of the given memory,
+	 * they can be visited again
+	 * @param memory
+	 */
+	private void forgetVisits(long[] memory) {
+		for(int k = 0; k < visitationVector.length; k++) {
+			visitationVector[k] &= memory[k];
+		}
 	}
 	
 	/**
@@ -188,10 +350,19 @@ public class Resources implements Comparable<Resources>{
 	 * @param currentNode
 	 */
 	private void updateVisitationVector(Customer currentNode) {
-		visitationVector[currentNode.getId()] = true;
+		visitationVector[currentNode.getId() >>> 6] |= 1L << currentNode.getId();
 		nbVisitedNodes++;
 	}
 	
+	/**
+	 * Number of 64 bit words needed to store one bit per node
+	 * @param nbNodes
+	 * @return
+	 */
+	public static int getNbWords(int nbNodes) {
+		return (nbNodes + 63) >>> 6;
+	}
+	
 	@Override
 	public int compareTo(Resources that) {
 		
@@ -209,10 +380,10 @@ public class Resources implements Comparable<Resources>{
 			return 0;
 		}
 		
-		boolean[] thatUnreachableVector = that.getUnreachableVector();
+		long[] thatUnreachableVector = that.getUnreachableVector();
 		for(int k = 0; k < this.unreachableVector.length; k++) {
-			if( (thisDominance && this.unreachableVector[k] && !thatUnreachableVector[k]) || 
-				(thatDominance && !this.unreachableVector[k] && thatUnreachableVector[k])	) {
+			if( (thisDominance && (this.unreachableVector[k] & ~thatUnreachableVector[k]) != 0) || 
+				(thatDominance && (~this.unreachableVector[k] & thatUnreachableVector[k]) != 0) ) {
 				return 0;
 			}
 		}
@@ -238,23 +409,23 @@ public class Resources implements Comparable<Resources>{
 		return nbUnreachableNodes;
 	}
 
-	public boolean[] getUnreachableVector() {
+	public long[] getUnreachableVector() {
 		return unreachableVector;
 	}
 	
 	public boolean isReachable(int id) {
-		return !unreachableVector[id];
+		return (unreachableVector[id >>> 6] & (1L << id)) == 0;
 	}
 	
-	public boolean[] getVisitationVector() {
+	public long[] getVisitationVector() {
 		return visitationVector;
 	}
 	
 	public boolean isVisited(int id) {
-		return visitationVector[id];
+		return (visitationVector[id >>> 6] & (1L << id)) != 0;
 	}
 
-	public void setVisitationVector(boolean[] visitationVector) {
+	public void setVisitationVector(long[] visitationVector) {
 		this.visitationVector = visitationVector;
 	}
 
@@ -0,0 +1,270 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Groups the labels of a store in buckets by number of unreachable nodes and time slice,
+ * each bucket being sorted by cost. A label can only be dominated by labels of buckets
+ * with no more unreachable nodes and no later time slice, so the other buckets are skipped.
+ * The cost order of all the labels is kept aside to list them.
+ * @author pablo
+ *
+ */
+public class SkylineIndex implements LabelIndex {
+
+	/** Number of slices the time window of the node is split into */
+	private static final int NB_TIME_SLICES = 8;
+
+	/** The store holding the label data */
+	private LabelStore store;
+
+	/** Start of the time window of the node */
+	private double start;
+
+	/** Length of a time slice */
+	private double sliceLength;
+
+	/** Slots of each bucket in increasing cost order, created when first used */
+	private int[][] buckets;
+
+	/** Number of labels of each bucket */
+	private int[] bucketSizes;
+
+	/** Buckets holding at least one label */
+	private int[] occupied;
+
+	/** Number of buckets holding at least one label */
+	private int nbOccupied;
+
+	/** Slots of every label in increasing cost order, it may still list removed ones */
+	private int[] order;
+
+	/** Number of slots in the cost order */
+	private int size;
+
+	/** Number of removed slots still in the cost order */
+	private int nbRemoved;
+
+	/**
+	 * @param store
+	 */
+	public SkylineIndex(LabelStore store) {
+		this.store = store;
+
+		Customer node = store.getNode();
+		this.start = node.getStart();
+		this.sliceLength = (node.getEnd() - node.getStart()) / NB_TIME_SLICES;
+
+		int nbBuckets = (store.getNbNodes() + 1) * NB_TIME_SLICES;
+		this.buckets = new int[nbBuckets][];
+		this.bucketSizes = new int[nbBuckets];
+		this.occupied = new int[nbBuckets];
+
+		this.order = new int[16];
+	}
+
+	@Override
+	public boolean isDominated(Resources resources) {
+		int nbUnreachable = resources.getNbUnreachableNodes();
+		int slice = this.getSlice(resources.getTime());
+		double cost = resources.getCost();
+
+		for( int i = 0; i < nbOccupied; i++ ) {
+			int bucket = occupied[i];
+			if( bucket / NB_TIME_SLICES > nbUnreachable || bucket % NB_TIME_SLICES > slice ) {
+				continue;
+			}
+
+			int[] slots = buckets[bucket];
+			for( int position = 0; position < bucketSizes[bucket]; position++ ) {
+				if( store.getCost(slots[position]) > cost ) {
+					break;
+				}
+				if( store.dominates(slots[position], resources) ) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public int removeDominated(Resources resources) {
+		int nbUnreachable = resources.getNbUnreachableNodes();
+		int slice = this.getSlice(resources.getTime());
+		double cost = resources.getCost();
+
+		int removedLabels = 0;
+
+		// Backwards so emptied buckets can be swapped out of the occupied list
+		for( int i = nbOccupied - 1; i >= 0; i-- ) {
+			int bucket = occupied[i];
+			if( bucket / NB_TIME_SLICES < nbUnreachable || bucket % NB_TIME_SLICES < slice ) {
+				continue;
+			}
+
+			int[] slots = buckets[bucket];
+			int kept = 0;
+			for( int position = 0; position < bucketSizes[bucket]; position++ ) {
+				int slot = slots[position];
+				if( store.getCost(slot) >= cost && store.isDominatedBy(slot, resources) ) {
+					store.setRemoved(slot);
+					removedLabels++;
+				}
+				else {
+					slots[kept++] = slot;
+				}
+			}
+			bucketSizes[bucket] = kept;
+
+			if( kept == 0 ) {
+				occupied[i] = occupied[--nbOccupied];
+			}
+		}
+
+		nbRemoved += removedLabels;
+		return removedLabels;
+	}
+
+	@Override
+	public void add(int slot) {
+		this.compact();
+
+		// Add it to its bucket
+		int bucket = this.getBucket(slot);
+		if( buckets[bucket] == null ) {
+			buckets[bucket] = new int[4];
+		}
+		if( bucketSizes[bucket] == 0 ) {
+			occupied[nbOccupied++] = bucket;
+		}
+		buckets[bucket] = insertSorted(buckets[bucket], bucketSizes[bucket], slot);
+		bucketSizes[bucket]++;
+
+		// Add it to the cost order
+		order = insertSorted(order, size, slot);
+		size++;
+	}
+
+	@Override
+	public int size() {
+		this.compact();
+		return size;
+	}
+
+	@Override
+	public int get(int position) {
+		this.compact();
+		return order[position];
+	}
+
+	@Override
+	public void truncate(int size) {
+		this.compact();
+
+		for( int position = size; position < this.size; position++ ) {
+			int slot = order[position];
+			store.setRemoved(slot);
+			this.removeFromBucket(slot);
+		}
+
+		this.size = Math.min(this.size, size);
+	}
+
+	@Override
+	public void remove(int slot) {
+		// The cost order is compacted later
+		store.setRemoved(slot);
+		this.removeFromBucket(slot);
+		nbRemoved++;
+	}
+
+	/**
+	 * Remove a slot from its bucket, the bucket being no longer occupied if it was its last slot
+	 * @param slot
+	 */
+	private void removeFromBucket(int slot) {
+		int bucket = this.getBucket(slot);
+
+		int[] slots = buckets[bucket];
+		int index = 0;
+		while( slots[index] != slot ) {
+			index++;
+		}
+		System.arraycopy(slots, index + 1, slots, index, bucketSizes[bucket] - index - 1);
+		bucketSizes[bucket]--;
+
+		if( bucketSizes[bucket] == 0 ) {
+			int i = 0;
+			while( occupied[i] != bucket ) {
+				i++;
+			}
+			occupied[i] = occupied[--nbOccupied];
+		}
+	}
+
+	/**
+	 * Drop the removed slots from the cost order
+	 */
+	private void compact() {
+		if( nbRemoved == 0 ) {
+			return;
+		}
+
+		int kept = 0;
+		for( int position = 0; position < size; position++ ) {
+			if( !store.isRemoved(order[position]) ) {
+				order[kept++] = order[position];
+			}
+		}
+		size = kept;
+		nbRemoved = 0;
+	}
+
+	/**
+	 * Insert a slot in an array sorted by cost, after the slots with the same cost
+	 * @return the array, grown if it was full
+	 */
+	private int[] insertSorted(int[] slots, int length, int slot) {
+		if( length == slots.length ) {
+			slots = Arrays.copyOf(slots, 2 * slots.length);
+		}
+
+		double cost = store.getCost(slot);
+		int low = 0;
+		int high = length;
+		while( low < high ) {
+			int middle = (low + high) >>> 1;
+			if( store.getCost(slots[middle]) <= cost ) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+
+		System.arraycopy(slots, low, slots, low + 1, length - low);
+		slots[low] = slot;
+		return slots;
+	}
+
+	/**
+	 * @param slot
+	 * @return the bucket of the label in the given slot
+	 */
+	private int getBucket(int slot) {
+		return store.getNbUnreachableNodes(slot) * NB_TIME_SLICES + this.getSlice(store.getTime(slot));
+	}
+
+	/**
+	 * @param time
+	 * @return the time slice containing the given time
+	 */
+	private int getSlice(double time) {
+		if( sliceLength <= 0 || time <= start ) {
+			return 0;
+		}
+		return Math.min( NB_TIME_SLICES - 1, (int) ((time - start) / sliceLength) );
+	}
+}
@@ -0,0 +1,284 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The labels of a single node for the shortest path problem with k-cycle elimination.
+ * Instead of a visitation vector a label keeps the last k-1 nodes of its path,
+ * the only ones it cannot go back to. The labels are grouped by time bucket,
+ * which only limits the labels compared: a label can be dominated by the ones
+ * of the same or earlier buckets and dominate the ones of the same or later buckets.
+ * @author pablo
+ *
+ */
+public class TailLabelStore {
+
+	/** Initial number of slots */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Number of buckets the time window of the node is split into */
+	private static final int NB_TIME_BUCKETS = 32;
+
+	/** The node where every label of the store ends */
+	private Customer node;
+
+	/** Number of nodes kept in the tail of a label */
+	private int tailLength;
+
+	/** Start of the time window of the node */
+	private double start;
+
+	/** Length of a time bucket */
+	private double bucketLength;
+
+	/** Number of slots in use */
+	private int nbSlots;
+
+	private double[] cost;
+
+	private double[] time;
+
+	private double[] demand;
+
+	/** Last nodes visited before the node, the latest first, tailLength per slot, -1 if the path is shorter */
+	private int[] tails;
+
+	/** The node of the label used to build each label, -1 for the origin */
+	private int[] parentNode;
+
+	/** The slot of the label used to build each label, -1 for the origin */
+	private int[] parentIndex;
+
+	/** If the label has been dominated */
+	private boolean[] removed;
+
+	/** Slots of the non dominated labels of each time bucket, created when first used */
+	private int[][] buckets;
+
+	/** Number of labels of each time bucket */
+	private int[] bucketSizes;
+
+	/** First slot whose label has not been extended yet, every later slot is newer */
+	private int firstNewSlot;
+
+	/**
+	 * Create an empty store for the given node
+	 * @param node
+	 * @param tailLength number of nodes a label cannot go back to
+	 */
+	public TailLabelStore(Customer node, int tailLength) {
+		this.node = node;
+		this.tailLength = tailLength;
+		this.start = node.getStart();
+		this.bucketLength = (node.getEnd() - node.getStart()) / NB_TIME_BUCKETS;
+
+		cost = new double[INITIAL_CAPACITY];
+		time = new double[INITIAL_CAPACITY];
+		demand = new double[INITIAL_CAPACITY];
+		tails = new int[INITIAL_CAPACITY * tailLength];
+		parentNode = new int[INITIAL_CAPACITY];
+		parentIndex = new int[INITIAL_CAPACITY];
+		removed = new boolean[INITIAL_CAPACITY];
+
+		buckets = new int[NB_TIME_BUCKETS][];
+		bucketSizes = new int[NB_TIME_BUCKETS];
+	}
+
+	/**
+	 * Check dominance between the given label and the labels of the store.
+	 * A label dominates another one if its cost, time and demand are not greater
+	 * and, for every r, its last r nodes are among the last r nodes of the other one,
+	 * so every extension of the other label is also possible from it.
+	 *
+	 * @param labelCost
+	 * @param labelTime
+	 * @param labelDemand
+	 * @param tail the last nodes visited before the node, the latest first
+	 * @param previousNode the node of the label that was extended
+	 * @param previousIndex the slot of the label that was extended
+	 * @return true if the label has been stored
+	 */
+	public boolean insert(double labelCost, double labelTime, double labelDemand, int[] tail, int previousNode, int previousIndex) {
+		int labelBucket = this.getBucket(labelTime);
+
+		// Labels of the same or earlier buckets may dominate it.
+		// With a single node in the tails, two labels coming from different nodes
+		// dominate it together since one of them can always follow it.
+		int dominatingPredecessor = -1;
+		for( int bucket = 0; bucket <= labelBucket; bucket++ ) {
+			for( int position = 0; position < bucketSizes[bucket]; position++ ) {
+				int slot = buckets[bucket][position];
+				if( cost[slot] > labelCost || time[slot] > labelTime || demand[slot] > labelDemand ) {
+					continue;
+				}
+
+				if( this.isTailCovered(tails, slot * tailLength, tail, 0) ) {
+					return false;
+				}
+				if( tailLength == 1 ) {
+					if( dominatingPredecessor >= 0 && tails[slot] != dominatingPredecessor ) {
+						return false;
+					}
+					dominatingPredecessor = tails[slot];
+				}
+			}
+		}
+
+		// Labels of the same or later buckets may be dominated by it
+		for( int bucket = labelBucket; bucket < NB_TIME_BUCKETS; bucket++ ) {
+			int kept = 0;
+			for( int position = 0; position < bucketSizes[bucket]; position++ ) {
+				int slot = buckets[bucket][position];
+				if( labelCost <= cost[slot] && labelTime <= time[slot] && labelDemand <= demand[slot] &&
+					this.isTailCovered(tail, 0, tails, slot * tailLength) ) {
+					removed[slot] = true;
+				}
+				else {
+					buckets[bucket][kept++] = slot;
+				}
+			}
+			bucketSizes[bucket] = kept;
+		}
+
+		int slot = this.addSlot(labelCost, labelTime, labelDemand, tail, previousNode, previousIndex);
+		if( buckets[labelBucket] == null ) {
+			buckets[labelBucket] = new int[4];
+		}
+		else if( bucketSizes[labelBucket] == buckets[labelBucket].length ) {
+			buckets[labelBucket] = Arrays.copyOf(buckets[labelBucket], 2 * bucketSizes[labelBucket]);
+		}
+		buckets[labelBucket][bucketSizes[labelBucket]++] = slot;
+
+		return true;
+	}
+
+	/**
+	 * If for every r the last r nodes of the first tail are among the last r nodes of the second one
+	 */
+	private boolean isTailCovered(int[] tail, int offset, int[] otherTail, int otherOffset) {
+		for( int r = 0; r < tailLength; r++ ) {
+			int nodeId = tail[offset + r];
+			if( nodeId < 0 ) {
+				continue;
+			}
+
+			boolean found = false;
+			for( int s = 0; s <= r && !found; s++ ) {
+				found = otherTail[otherOffset + s] == nodeId;
+			}
+			if( !found ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write the label in a new slot
+	 * @return the slot
+	 */
+	private int addSlot(double labelCost, double labelTime, double labelDemand, int[] tail, int previousNode, int previousIndex) {
+		if( nbSlots == cost.length ) {
+			int capacity = 2 * cost.length;
+			cost = Arrays.copyOf(cost, capacity);
+			time = Arrays.copyOf(time, capacity);
+			demand = Arrays.copyOf(demand, capacity);
+			tails = Arrays.copyOf(tails, capacity * tailLength);
+			parentNode = Arrays.copyOf(parentNode, capacity);
+			parentIndex = Arrays.copyOf(parentIndex, capacity);
+			removed = Arrays.copyOf(removed, capacity);
+		}
+
+		int slot = nbSlots++;
+		cost[slot] = labelCost;
+		time[slot] = labelTime;
+		demand[slot] = labelDemand;
+		System.arraycopy(tail, 0, tails, slot * tailLength, tailLength);
+		parentNode[slot] = previousNode;
+		parentIndex[slot] = previousIndex;
+
+		return slot;
+	}
+
+	/**
+	 * @param labelTime
+	 * @return the time bucket containing the given time
+	 */
+	private int getBucket(double labelTime) {
+		if( bucketLength <= 0 || labelTime <= start ) {
+			return 0;
+		}
+		return Math.min( NB_TIME_BUCKETS - 1, (int) ((labelTime - start) / bucketLength) );
+	}
+
+	// ===== GETTERS & SETTERS =====
+
+	public Customer getNode() {
+		return node;
+	}
+
+	/**
+	 * @return number of non dominated labels
+	 */
+	public int size() {
+		int size = 0;
+		for( int bucket = 0; bucket < NB_TIME_BUCKETS; bucket++ ) {
+			size += bucketSizes[bucket];
+		}
+		return size;
+	}
+
+	public double getCost(int slot) {
+		return cost[slot];
+	}
+
+	public double getTime(int slot) {
+		return time[slot];
+	}
+
+	public double getDemand(int slot) {
+		return demand[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @param position 0 for the node visited just before the node of the store
+	 * @return the node of the tail at the given position, -1 if the path is shorter
+	 */
+	public int getTailNode(int slot, int position) {
+		return tails[slot * tailLength + position];
+	}
+
+	public int getParentNode(int slot) {
+		return parentNode[slot];
+	}
+
+	public int getParentIndex(int slot) {
+		return parentIndex[slot];
+	}
+
+	/**
+	 * @return number of slots in use, the ones of removed labels included
+	 */
+	public int getNbSlots() {
+		return nbSlots;
+	}
+
+	/**
+	 * @return first slot whose label has not been extended yet
+	 */
+	public int getFirstNewSlot() {
+		return firstNewSlot;
+	}
+
+	/**
+	 * Set every label stored until now as extended
+	 */
+	public void setExtended() {
+		firstNewSlot = nbSlots;
+	}
+
+	public boolean isRemoved(int slot) {
+		return removed[slot];
+	}
+}
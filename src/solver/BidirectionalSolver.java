@@ -0,0 +1,431 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import model.Customer;
+import model.EspprcInstance;
+import model.Label;
+import model.LabelStore;
+import model.Resources;
+
+/**
+ * Bidirectional labelling (Righini G, Salani M, 2006): labels are extended forward from the origin
+ * while they arrive before the middle of the time horizon and backward from the depot while their latest start
+ * is after it. A route is obtained by joining a forward label with a backward label on the arc crossing the middle,
+ * so each route is joined only once.
+ * The routes reaching the depot are compared on cost, time and demand. A backward label is dominated on its latest
+ * start rather than on the time the joined route reaches the depot, so some routes that {@link LabellingSolver} keeps
+ * at the depot are never built and fewer columns are returned, the cheapest route always being among them.
+ * @author pablo
+ *
+ */
+public class BidirectionalSolver {
+
+	/**
+	 * An instance containing the graph and the necessary information
+	 */
+	private EspprcInstance instance;
+
+	/**
+	 * If the forward labels of each node are indexed with a skyline instead of a cost ordered list
+	 */
+	private boolean useSkyline;
+
+	/**
+	 * The order in which nodes waiting to be treated are chosen
+	 */
+	private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+
+	/**
+	 * Number of labels extended during the last resolution, in both directions
+	 */
+	private long nbExtensions;
+
+	/**
+	 * If the last resolution was stopped by the time limit before extending every label
+	 */
+	private boolean interrupted;
+
+	/**
+	 * The route that dominated the last discarded join, checked first
+	 * since consecutive joins share most of their nodes
+	 */
+	private Label lastDominating;
+
+	/**
+	 * Initialize the solver with an ESPPRC instance
+	 * @param instance
+	 */
+	public BidirectionalSolver(EspprcInstance instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * Builds the forward labels of each node, the depot receiving the routes
+	 * obtained by joining forward and backward labels.
+	 * The backward search needs a depot distinct from the origin,
+	 * otherwise the routes are only built forwards.
+	 * @param timeLimit
+	 * @param labelLimit
+	 * @return list containg the non dominated labels generated on each node of the graph
+	 */
+	public ArrayList<Label>[] genFeasibleRoutes(int timeLimit, int labelLimit) {
+		if( !instance.isDuplicateOrigin() ) {
+			LabellingSolver forwardSolver = this.getForwardSolver( Double.POSITIVE_INFINITY );
+			ArrayList<Label>[] labels = forwardSolver.genFeasibleRoutes(timeLimit, labelLimit);
+			interrupted = forwardSolver.isInterrupted();
+			return labels;
+		}
+
+		LabelStore[][] stores = this.genLabelStores(timeLimit, labelLimit);
+		LabelStore[] forwardLabels = stores[0];
+		int depotIndex = forwardLabels.length - 1;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		ArrayList<Label>[] labels = new ArrayList[forwardLabels.length];
+		for(int i = 0; i < depotIndex; i++) {
+			labels[i] = forwardLabels[i].getLabels(forwardLabels);
+		}
+		labels[depotIndex] = this.joinLabels(forwardLabels, stores[1]);
+
+		return labels;
+	}
+
+	/**
+	 * Solves the problem only building the labels that reach the depot
+	 * @param timeLimit
+	 * @param labelLimit
+	 * @return list containing the non dominated labels of the depot in increasing cost order
+	 */
+	public ArrayList<Label> genDepotLabels(int timeLimit, int labelLimit) {
+		if( !instance.isDuplicateOrigin() ) {
+			LabellingSolver forwardSolver = this.getForwardSolver( Double.POSITIVE_INFINITY );
+			ArrayList<Label> labels = forwardSolver.genDepotLabels(timeLimit, labelLimit);
+			interrupted = forwardSolver.isInterrupted();
+			return labels;
+		}
+
+		LabelStore[][] stores = this.genLabelStores(timeLimit, labelLimit);
+
+		return this.joinLabels(stores[0], stores[1]);
+	}
+
+	/**
+	 * Extend the labels in both directions up to the middle of the time horizon
+	 * @param timeLimit shared by both directions
+	 * @param labelLimit
+	 * @return the forward and the backward label stores of each node
+	 */
+	public LabelStore[][] genLabelStores(int timeLimit, int labelLimit) {
+		long endTime = System.currentTimeMillis() + timeLimit*1000;
+		double midpoint = this.getMidpoint();
+
+		LabellingSolver forwardSolver = this.getForwardSolver( midpoint );
+		LabelStore[] forwardLabels = forwardSolver.genLabelStores(timeLimit, labelLimit);
+
+		LabelStore[] backwardLabels = this.genBackwardStores(timeLimit > 0 ? endTime : 0, labelLimit, midpoint);
+		nbExtensions += forwardSolver.getNbExtensions();
+		interrupted |= forwardSolver.isInterrupted();
+
+		return new LabelStore[][] { forwardLabels, backwardLabels };
+	}
+
+	/**
+	 * Extend labels backwards from the depot, a label whose latest start
+	 * is before the midpoint is stored but not extended
+	 * @param endTime time in milliseconds when the algorithm stops, no limit if it is not positive
+	 * @param labelLimit
+	 * @param midpoint
+	 * @return the backward label store of each node of the graph
+	 */
+	private LabelStore[] genBackwardStores(long endTime, int labelLimit, double midpoint) {
+
+		// Initialization
+		LabelStore[] labels = new LabelStore[instance.getNbNodes()];
+		for(int i = 0; i < instance.getNbNodes(); i++) {
+			labels[i] = new LabelStore( instance.getNode(i), instance.getNbNodes() );
+		}
+
+		// Reusable resources where candidates are built before checking dominance
+		Resources extendedResources = new Resources( instance );
+
+		// Depot node
+		Customer depot = instance.getNode( instance.getNbNodes() - 1 );
+		extendedResources.setBackwardOrigin( instance, depot );
+		labels[depot.getId()].insert( extendedResources, -1, -1 );
+
+		// Labels each node received from the node being treated
+		int[] nbNewLabels = new int[instance.getNbNodes()];
+
+		// Customers waiting to be treated
+		NodeScheduler E = new NodeScheduler( instance, queuePolicy );
+		E.add( depot.getId(), 1 );
+		nbExtensions = 0;
+
+		boolean inTime = true;
+		do {
+			Customer currentNode = instance.getNode( E.poll() );
+			LabelStore currentLabels = labels[currentNode.getId()];
+
+			int firstNewSlot = currentLabels.getFirstNewSlot();
+			int nbSlots = currentLabels.getNbSlots();
+
+			// Exploration of the predecessors of a node
+			int[] predecessorIds = this.instance.getPredecessorIds( currentNode.getId() );
+			for(int predecessorId : predecessorIds) {
+				Customer predecessor = instance.getNode( predecessorId );
+				LabelStore predecessorLabels = labels[predecessorId];
+
+				for(int index = firstNewSlot; index < nbSlots; index++) {
+					if( !currentLabels.isRemoved(index) && currentLabels.isReachable(index, predecessorId) &&
+						-currentLabels.getTime(index) >= midpoint ) {
+						currentLabels.load( index, extendedResources );
+						extendedResources.extendResourcesBackward( this.instance, predecessor, currentNode );
+						nbExtensions++;
+						if( predecessorLabels.insert( extendedResources, currentNode.getId(), index ) ) {
+							nbNewLabels[predecessorId]++;
+						}
+					}
+				}
+			}
+
+			for(int predecessorId : predecessorIds) {
+				labels[predecessorId].applyLabelLimit(labelLimit);
+
+				if( nbNewLabels[predecessorId] > 0 ) {
+					E.add( predecessorId, nbNewLabels[predecessorId] );
+					nbNewLabels[predecessorId] = 0;
+				}
+			}
+
+			currentLabels.setExtended();
+
+			if( endTime > 0 ) {
+				inTime = System.currentTimeMillis() < endTime;
+			}
+		}while( !E.isEmpty() && inTime );
+		interrupted = !inTime;
+
+		return labels;
+	}
+
+	/**
+	 * Join every forward label arriving at a node before the midpoint with the backward labels
+	 * of the successors it reaches after the midpoint. The routes whose last customer is reached
+	 * before the midpoint are already in the forward labels of the depot.
+	 * @param forwardLabels
+	 * @param backwardLabels
+	 * @return the non dominated routes in increasing cost order
+	 */
+	private ArrayList<Label> joinLabels(LabelStore[] forwardLabels, LabelStore[] backwardLabels) {
+		int depotIndex = forwardLabels.length - 1;
+		int nbWords = Resources.getNbWords( instance.getNbNodes() );
+		double midpoint = this.getMidpoint();
+		double capacity = instance.getCapacity();
+
+		ArrayList<Label> routes = new ArrayList<Label>();
+		lastDominating = null;
+		for(Label label : forwardLabels[depotIndex].getLabels(forwardLabels)) {
+			this.addRoute(routes, label);
+		}
+
+		for(int i = 0; i < depotIndex; i++) {
+			Customer node = instance.getNode(i);
+			LabelStore currentLabels = forwardLabels[i];
+
+			for(int position = 0; position < currentLabels.size(); position++) {
+				int slot = currentLabels.getIndex(position);
+				if( currentLabels.getTime(slot) > midpoint ) {
+					continue;
+				}
+
+				for(int j : instance.getSuccessorIds(i)) {
+					if( j == depotIndex || !currentLabels.isReachable(slot, j) ) {
+						continue;
+					}
+
+					Customer nextNode = instance.getNode(j);
+					double arrival = Math.max( nextNode.getStart(),
+							currentLabels.getTime(slot) + node.getServiceTime() + instance.getDistance(i, j) );
+					if( arrival <= midpoint ) {
+						continue;
+					}
+
+					LabelStore nextLabels = backwardLabels[j];
+					for(int nextPosition = 0; nextPosition < nextLabels.size(); nextPosition++) {
+						int nextSlot = nextLabels.getIndex(nextPosition);
+
+						if( arrival > -nextLabels.getTime(nextSlot) ||
+							currentLabels.getDemand(slot) + nextLabels.getDemand(nextSlot) > capacity ) {
+							continue;
+						}
+
+						boolean disjoint = true;
+						for(int k = 0; k < nbWords && disjoint; k++) {
+							disjoint = (currentLabels.getVisitationWord(slot, k) & nextLabels.getVisitationWord(nextSlot, k)) == 0;
+						}
+
+						if( disjoint ) {
+							this.joinRoute(routes, currentLabels, slot, forwardLabels, backwardLabels, j, nextSlot);
+						}
+					}
+				}
+			}
+		}
+
+		return routes;
+	}
+
+	/**
+	 * Follow the nodes of a backward label from the end of a forward label,
+	 * computing the resources at the depot the same way a forward extension would.
+	 * The route is only built if it is feasible and not dominated by the routes found so far.
+	 * @param routes
+	 * @param currentLabels
+	 * @param slot the slot of the forward label
+	 * @param forwardLabels
+	 * @param backwardLabels
+	 * @param nextNode the node of the backward label
+	 * @param nextSlot the slot of the backward label
+	 */
+	private void joinRoute(ArrayList<Label> routes, LabelStore currentLabels, int slot,
+			LabelStore[] forwardLabels, LabelStore[] backwardLabels, int nextNode, int nextSlot) {
+		Customer previousNode = currentLabels.getNode();
+		double cost = currentLabels.getCost(slot);
+		double time = currentLabels.getTime(slot);
+
+		int node = nextNode;
+		int nodeSlot = nextSlot;
+		while( node >= 0 ) {
+			Customer currentNode = instance.getNode(node);
+			double arcDistance = instance.getDistance( previousNode.getId(), node );
+			if( time + previousNode.getServiceTime() + arcDistance > currentNode.getEnd() ) {
+				return;
+			}
+			if( currentNode.getStart() > time + previousNode.getServiceTime() + arcDistance ) {
+				time = currentNode.getStart();
+			}
+			else {
+				time += previousNode.getServiceTime() + arcDistance;
+			}
+			cost += instance.getCost( previousNode.getId(), node );
+
+			previousNode = currentNode;
+			int parentSlot = backwardLabels[node].getParentIndex(nodeSlot);
+			node = backwardLabels[node].getParentNode(nodeSlot);
+			nodeSlot = parentSlot;
+		}
+
+		double demand = currentLabels.getDemand(slot) + backwardLabels[nextNode].getDemand(nextSlot);
+		if( lastDominating != null && this.dominates(lastDominating, cost, time, demand) ) {
+			return;
+		}
+		for(Label route : routes) {
+			if( route.getCost() > cost ) {
+				break;
+			}
+			if( this.dominates(route, cost, time, demand) ) {
+				lastDominating = route;
+				return;
+			}
+		}
+
+		// Build the route extending the forward label
+		Label route = currentLabels.getLabel(slot, forwardLabels);
+		node = nextNode;
+		nodeSlot = nextSlot;
+		while( node >= 0 ) {
+			route = route.extendLabel( instance.getNode(node), instance );
+
+			int parentSlot = backwardLabels[node].getParentIndex(nodeSlot);
+			node = backwardLabels[node].getParentNode(nodeSlot);
+			nodeSlot = parentSlot;
+		}
+		this.addRoute(routes, route);
+	}
+
+	/**
+	 * @return true if the route dominates a route with the given resources at the depot
+	 */
+	private boolean dominates(Label route, double cost, double time, double demand) {
+		Resources resources = route.getResources();
+		return resources.getCost() <= cost && resources.getTime() <= time && resources.getDemand() <= demand;
+	}
+
+	/**
+	 * Add a route to the non dominated routes of the depot, keeping them in increasing cost order
+	 * @param routes
+	 * @param route
+	 */
+	private void addRoute(ArrayList<Label> routes, Label route) {
+		Resources resources = route.getResources();
+
+		for(Label other : routes) {
+			if( this.dominates(other, resources.getCost(), resources.getTime(), resources.getDemand()) ) {
+				return;
+			}
+		}
+		Iterator<Label> iterator = routes.iterator();
+		while( iterator.hasNext() ) {
+			Resources otherResources = iterator.next().getResources();
+			if( this.dominates(route, otherResources.getCost(), otherResources.getTime(), otherResources.getDemand()) ) {
+				iterator.remove();
+			}
+		}
+
+		int position = 0;
+		while( position < routes.size() && routes.get(position).getCost() <= route.getCost() ) {
+			position++;
+		}
+		routes.add(position, route);
+	}
+
+	/**
+	 * @param maxExtensionTime
+	 * @return a forward solver with the same settings
+	 */
+	private LabellingSolver getForwardSolver(double maxExtensionTime) {
+		LabellingSolver forwardSolver = new LabellingSolver( instance );
+		forwardSolver.setUseSkyline( useSkyline );
+		forwardSolver.setQueuePolicy( queuePolicy );
+		forwardSolver.setMaxExtensionTime( maxExtensionTime );
+		return forwardSolver;
+	}
+
+	/**
+	 * @return the middle of the time horizon of the instance
+	 */
+	private double getMidpoint() {
+		return ( instance.getNode(0).getStart() + instance.getNode( instance.getNbNodes() - 1 ).getEnd() ) / 2;
+	}
+
+	/**
+	 * @param useSkyline set to "true" to index the forward labels of each node with a skyline
+	 * instead of a cost ordered list
+	 */
+	public void setUseSkyline(boolean useSkyline) {
+		this.useSkyline = useSkyline;
+	}
+
+	/**
+	 * @param queuePolicy the order in which nodes waiting to be treated are chosen
+	 */
+	public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+
+	/**
+	 * @return number of labels extended during the last resolution
+	 */
+	public long getNbExtensions() {
+		return nbExtensions;
+	}
+
+	/**
+	 * @return true if the last resolution was stopped by the time limit, so a missing negative route proves nothing
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+}
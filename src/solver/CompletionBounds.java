@@ -0,0 +1,144 @@
+package solver;
+
+import java.util.Arrays;
+
+import model.Customer;
+import model.EspprcInstance;
+
+/**
+ * Lower bounds on the cost to go from a node to the depot, given the time of the label at the node.
+ * They are the costs of a shortest path problem relaxed from elementarity and capacity,
+ * only forbidding to go back to the previous node, solved backwards on a grid of times
+ * so a label may be discarded when even the cheapest completion cannot give it a negative cost.
+ * @author pablo
+ *
+ */
+public class CompletionBounds {
+
+	/** Maximum number of times of the grid */
+	private static final int MAX_TIME_BUCKETS = 1024;
+
+	/** Time between two consecutive times of the grid */
+	private double bucketLength;
+
+	/** Lower bound of each node for the labels at least at each time of the grid */
+	private double[][] bounds;
+
+	/** First node after the node of the path giving each bound, -1 if there is none */
+	private int[][] nextNodes;
+
+	/** Lower bound of the paths whose first node after the node is not the one of the bound */
+	private double[][] secondBounds;
+
+	/**
+	 * Solve the relaxed problem for the current costs of the instance
+	 * @param instance
+	 */
+	public CompletionBounds(EspprcInstance instance) {
+		int nbNodes = instance.getNbNodes();
+		int depotIndex = instance.isDuplicateOrigin() ? nbNodes - 1 : 0;
+
+		// The grid is as fine as the shortest move between two nodes,
+		// so the arrival at a successor always falls in a later bucket
+		double horizon = instance.getHorizon();
+		bucketLength = Math.max( Math.min( instance.getShortestMove(), horizon ), horizon / MAX_TIME_BUCKETS );
+		if( bucketLength <= 0 ) {
+			bucketLength = 1;
+		}
+		int nbBuckets = (int) (horizon / bucketLength) + 1;
+
+		bounds = new double[nbNodes][nbBuckets];
+		nextNodes = new int[nbNodes][nbBuckets];
+		secondBounds = new double[nbNodes][nbBuckets];
+		for(int i = 0; i < nbNodes; i++) {
+			Arrays.fill(nextNodes[i], -1);
+		}
+
+		// Later buckets first, the depot bounds staying at 0
+		for(int bucket = nbBuckets - 1; bucket >= 0; bucket--) {
+			double time = bucket * bucketLength;
+
+			for(int i = 0; i < nbNodes; i++) {
+				if( i == depotIndex ) {
+					continue;
+				}
+
+				Customer node = instance.getNode(i);
+				int[] successorIds = instance.getSuccessorIds(i);
+				double[] latestDepartures = instance.getLatestDepartures(i);
+
+				double bound = Double.POSITIVE_INFINITY;
+				double secondBound = Double.POSITIVE_INFINITY;
+				int nextNode = -1;
+				for(int k = 0; k < successorIds.length; k++) {
+					int j = successorIds[k];
+					if( time > latestDepartures[k] ) {
+						continue;
+					}
+
+					double completion;
+					if( j == depotIndex ) {
+						completion = 0;
+					}
+					else {
+						Customer successor = instance.getNode(j);
+						double arrival = Math.max( successor.getStart(), time + node.getServiceTime() + instance.getDistance(i, j) );
+						int nextBucket = Math.min( nbBuckets - 1, (int) (arrival / bucketLength) );
+
+						// Nothing is known yet about the arrival bucket
+						if( nextBucket <= bucket ) {
+							completion = Double.NEGATIVE_INFINITY;
+						}
+						else if( nextNodes[j][nextBucket] != i ) {
+							completion = bounds[j][nextBucket];
+						}
+						else {
+							completion = secondBounds[j][nextBucket];
+						}
+					}
+
+					double pathBound = instance.getCost(i, j) + completion;
+					if( pathBound < bound ) {
+						secondBound = bound;
+						bound = pathBound;
+						nextNode = j;
+					}
+					else if( pathBound < secondBound ) {
+						secondBound = pathBound;
+					}
+				}
+
+				bounds[i][bucket] = bound;
+				secondBounds[i][bucket] = secondBound;
+				nextNodes[i][bucket] = nextNode;
+			}
+		}
+	}
+
+	/**
+	 * @param node
+	 * @param time the time of a label at the node
+	 * @return a lower bound on the cost to go from the node to the depot,
+	 * infinite if the depot cannot be reached
+	 */
+	public double getBound(int node, double time) {
+		int bucket = (int) (time / bucketLength);
+		if( bucket < 0 ) {
+			bucket = 0;
+		}
+		else if( bucket >= bounds[node].length ) {
+			bucket = bounds[node].length - 1;
+		}
+		return bounds[node][bucket];
+	}
+
+	/**
+	 * @param node
+	 * @param cost the cost of a label at the node
+	 * @param time the time of a label at the node
+	 * @return true if no completion of the label can have a negative cost
+	 */
+	public boolean isHopeless(int node, double cost, double time) {
+		return cost + this.getBound(node, time) >= 0;
+	}
+}
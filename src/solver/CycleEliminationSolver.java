@@ -0,0 +1,218 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import model.Customer;
+import model.EspprcInstance;
+import model.Label;
+import model.TailLabelStore;
+
+/**
+ * Relaxation of the ESPPRC where routes may visit a node more than once,
+ * only the cycles of at most k arcs being forbidden (Irnich S, Villeneuve D, 2006).
+ * Labels do not keep their visited nodes, only the last k-1 ones, so they dominate
+ * each other far more often than elementary labels. Since the routes found may
+ * contain longer cycles, the exact solver is still needed to prove there is
+ * no negative elementary route left.
+ * @author pablo
+ *
+ */
+public class CycleEliminationSolver {
+
+	/**
+	 * An instance containing the graph and the necessary information
+	 */
+	private EspprcInstance instance;
+
+	/**
+	 * Length of the longest forbidden cycle
+	 */
+	private int cycleLength;
+
+	/**
+	 * The order in which nodes waiting to be treated are chosen
+	 */
+	private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+
+	/**
+	 * Number of labels extended during the last resolution
+	 */
+	private long nbExtensions;
+
+	/**
+	 * Initialize the solver with an ESPPRC instance
+	 * @param instance
+	 * @param cycleLength length of the longest forbidden cycle, at least 2
+	 */
+	public CycleEliminationSolver(EspprcInstance instance, int cycleLength) {
+		this.instance = instance;
+		this.cycleLength = Math.max(2, cycleLength);
+	}
+
+	/**
+	 * Solves the relaxed problem
+	 * @param timeLimit
+	 * @return the non dominated routes reaching the depot in increasing cost order
+	 */
+	public ArrayList<Label> genDepotLabels(int timeLimit) {
+		TailLabelStore[] labels = this.genLabelStores(timeLimit);
+
+		int depotIndex = instance.isDuplicateOrigin() ? labels.length - 1 : 0;
+		TailLabelStore depotLabels = labels[depotIndex];
+
+		ArrayList<Label> routes = new ArrayList<Label>();
+		for(int slot = 0; slot < depotLabels.getNbSlots(); slot++) {
+			if( !depotLabels.isRemoved(slot) && depotLabels.getParentNode(slot) >= 0 ) {
+				routes.add( this.getRoute(labels, depotIndex, slot) );
+			}
+		}
+		Collections.sort(routes);
+
+		return routes;
+	}
+
+	/**
+	 * Extend the labels from the origin until no node receives new labels
+	 * @param timeLimit
+	 * @return the label store of each node of the graph
+	 */
+	public TailLabelStore[] genLabelStores(int timeLimit) {
+		int tailLength = cycleLength - 1;
+		double capacity = instance.getCapacity();
+		int[] demands = instance.getDemands();
+
+		// Initialization
+		TailLabelStore[] labels = new TailLabelStore[instance.getNbNodes()];
+		for(int i = 0; i < instance.getNbNodes(); i++) {
+			labels[i] = new TailLabelStore( instance.getNode(i), tailLength );
+		}
+
+		// Reusable tail where candidates are built
+		int[] tail = new int[tailLength];
+		for(int r = 0; r < tailLength; r++) {
+			tail[r] = -1;
+		}
+
+		// Origin node
+		labels[0].insert( 0, 0, instance.getNode(0).getDemand(), tail, -1, -1 );
+
+		// Labels each node received from the node being treated
+		int[] nbNewLabels = new int[instance.getNbNodes()];
+
+		// Customers waiting to be treated
+		NodeScheduler E = new NodeScheduler( instance, queuePolicy );
+		E.add( 0, 1 );
+		nbExtensions = 0;
+
+		// To stop the algorithm at a certain time
+		long endTime = System.currentTimeMillis() + timeLimit*1000;
+		boolean inTime = true;
+		do {
+			Customer currentNode = instance.getNode( E.poll() );
+			TailLabelStore currentLabels = labels[currentNode.getId()];
+
+			int firstNewSlot = currentLabels.getFirstNewSlot();
+			int nbSlots = currentLabels.getNbSlots();
+
+			int[] successorIds = instance.getSuccessorIds( currentNode.getId() );
+			double[] latestDepartures = instance.getLatestDepartures( currentNode.getId() );
+			for(int k = 0; k < successorIds.length; k++) {
+				int successorId = successorIds[k];
+				Customer successor = instance.getNode( successorId );
+				double arcDistance = instance.getDistance( currentNode.getId(), successorId );
+				double arcCost = instance.getCost( currentNode.getId(), successorId );
+
+				for(int index = firstNewSlot; index < nbSlots; index++) {
+					// Without a duplicated origin, the labels back at the origin are finished routes
+					if( currentLabels.isRemoved(index) ||
+						(currentNode.getId() == 0 && currentLabels.getParentNode(index) >= 0) ||
+						currentLabels.getTime(index) > latestDepartures[k] ||
+						currentLabels.getDemand(index) + demands[successorId] > capacity ||
+						this.isInTail(currentLabels, index, successorId) ) {
+						continue;
+					}
+
+					// Same time computation as the elementary labels
+					double time = currentLabels.getTime(index);
+					if( successor.getStart() > time + currentNode.getServiceTime() + arcDistance ) {
+						time = successor.getStart();
+					}
+					else {
+						time += currentNode.getServiceTime() + arcDistance;
+					}
+
+					// The current node becomes the latest node of the tail
+					tail[0] = currentNode.getId();
+					for(int r = 1; r < tailLength; r++) {
+						tail[r] = currentLabels.getTailNode(index, r - 1);
+					}
+
+					nbExtensions++;
+					if( labels[successorId].insert( currentLabels.getCost(index) + arcCost, time,
+							currentLabels.getDemand(index) + demands[successorId], tail, currentNode.getId(), index ) ) {
+						nbNewLabels[successorId]++;
+					}
+				}
+			}
+
+			for(int successorId : successorIds) {
+				if( nbNewLabels[successorId] > 0 ) {
+					E.add( successorId, nbNewLabels[successorId] );
+					nbNewLabels[successorId] = 0;
+				}
+			}
+
+			currentLabels.setExtended();
+
+			if( timeLimit > 0 ) {
+				inTime = System.currentTimeMillis() < endTime;
+			}
+		}while( !E.isEmpty() && inTime );
+
+		return labels;
+	}
+
+	/**
+	 * @return true if going to the node from the label would close a forbidden cycle
+	 */
+	private boolean isInTail(TailLabelStore labels, int slot, int nodeId) {
+		for(int r = 0; r < cycleLength - 1; r++) {
+			if( labels.getTailNode(slot, r) == nodeId ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build the route of a label extending the origin label along its nodes,
+	 * so it has the same resources as the labels of the other solvers
+	 * @param labels
+	 * @param nodeId
+	 * @param slot
+	 * @return
+	 */
+	private Label getRoute(TailLabelStore[] labels, int nodeId, int slot) {
+		if( labels[nodeId].getParentNode(slot) < 0 ) {
+			return new Label(instance);
+		}
+
+		Label previousLabel = this.getRoute( labels, labels[nodeId].getParentNode(slot), labels[nodeId].getParentIndex(slot) );
+		return previousLabel.extendLabel( instance.getNode(nodeId), instance );
+	}
+
+	/**
+	 * @param queuePolicy the order in which nodes waiting to be treated are chosen
+	 */
+	public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+
+	/**
+	 * @return number of labels extended during the last resolution
+	 */
+	public long getNbExtensions() {
+		return nbExtensions;
+	}
+}
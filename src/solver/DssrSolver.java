@@ -0,0 +1,216 @@
+package solver;
+
+import java.util.ArrayList;
+
+import model.EspprcInstance;
+import model.Label;
+import model.Resources;
+
+/**
+ * Decremental state space relaxation (Righini G, Salani M, 2008): elementarity is only enforced
+ * on a set of critical nodes, which starts empty. After each resolution the nodes visited more than once
+ * by the best route are made critical, until the best route is elementary.
+ * @author pablo
+ *
+ */
+public class DssrSolver {
+
+	/**
+	 * An instance containing the graph and the necessary information
+	 */
+	private EspprcInstance instance;
+
+	/**
+	 * If the labels of each node are indexed with a skyline instead of a cost ordered list
+	 */
+	private boolean useSkyline;
+
+	/**
+	 * The order in which nodes waiting to be treated are chosen
+	 */
+	private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+	
+	/**
+	 * If the labels are extended once in increasing time order instead of by node
+	 */
+	private boolean useTimeBuckets;
+
+	/**
+	 * The nodes on which elementarity is enforced, packed 64 nodes per word
+	 */
+	private long[] criticalNodes;
+
+	/**
+	 * Number of relaxed problems solved during the last resolution
+	 */
+	private int nbIterations;
+
+	/**
+	 * Number of labels extended during the last resolution
+	 */
+	private long nbExtensions;
+
+	/**
+	 * If the last resolution was stopped by the time limit before the best route was proved elementary
+	 */
+	private boolean interrupted;
+
+	/**
+	 * Initialize the solver with an ESPPRC instance
+	 * @param instance
+	 */
+	public DssrSolver(EspprcInstance instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * Solve relaxed problems until the best route at the depot is elementary
+	 * @param timeLimit in seconds, shared by every iteration: none starts once it is over
+	 * @param labelLimit
+	 * @return the elementary routes of the last iteration in increasing cost order,
+	 * it may be empty if the time limit is reached first
+	 */
+	public ArrayList<Label> genDepotLabels(int timeLimit, int labelLimit) {
+		long deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000000L : 0;
+
+		criticalNodes = new long[Resources.getNbWords( instance.getNbNodes() )];
+
+		LabellingSolver solver = new LabellingSolver( instance );
+		solver.setUseSkyline( useSkyline );
+		solver.setQueuePolicy( queuePolicy );
+		solver.setUseTimeBuckets( useTimeBuckets );
+
+		nbIterations = 0;
+		nbExtensions = 0;
+
+		ArrayList<Label> depotLabels = new ArrayList<Label>();
+		boolean elementary = false;
+		boolean iterationInterrupted = false;
+		do {
+			// Every iteration has the time left, none starts once it is over
+			long iterationTimeLimit = 0;
+			if( deadline != 0 ) {
+				iterationTimeLimit = deadline - System.nanoTime();
+				if( iterationTimeLimit <= 0 ) {
+					iterationInterrupted = true;
+					break;
+				}
+			}
+
+			// The solver gets a copy of the critical nodes, which grow between iterations
+			long[] memoryVector = criticalNodes.clone();
+			long[][] memoryVectors = new long[instance.getNbNodes()][];
+			for(int i = 0; i < instance.getNbNodes(); i++) {
+				memoryVectors[i] = memoryVector;
+			}
+			solver.setMemoryVectors( memoryVectors );
+
+			depotLabels = solver.genAnytimeDepotLabels(iterationTimeLimit, labelLimit, 0);
+			nbIterations++;
+			nbExtensions += solver.getNbExtensions();
+			iterationInterrupted = solver.isInterrupted();
+
+			// Nodes the best route visits more than once become critical
+			if( !depotLabels.isEmpty() ) {
+				elementary = !this.addRepeatedNodes( depotLabels.get(0) );
+			}
+		}while( !depotLabels.isEmpty() && !elementary && !iterationInterrupted );
+
+		// The last relaxed problem was not solved, or its best route still repeats a node
+		interrupted = iterationInterrupted || ( !depotLabels.isEmpty() && !elementary );
+
+		ArrayList<Label> routes = new ArrayList<Label>();
+		for(Label label : depotLabels) {
+			if( this.isElementary(label) ) {
+				routes.add(label);
+			}
+		}
+
+		return routes;
+	}
+
+	/**
+	 * Add the nodes visited more than once by the route to the critical nodes
+	 * @param route
+	 * @return true if the route visits a node more than once
+	 */
+	private boolean addRepeatedNodes(Label route) {
+		long[] visited = new long[criticalNodes.length];
+		boolean repeated = false;
+
+		// The origin is left out since it is also the end of the route without a duplicated origin
+		for(Label label = route; label.getPreviousLabel() != null; label = label.getPreviousLabel()) {
+			int id = label.getCurrent().getId();
+			if( (visited[id >>> 6] & (1L << id)) != 0 ) {
+				criticalNodes[id >>> 6] |= 1L << id;
+				repeated = true;
+			}
+			visited[id >>> 6] |= 1L << id;
+		}
+
+		return repeated;
+	}
+
+	/**
+	 * @param route
+	 * @return true if the route visits each node at most once
+	 */
+	private boolean isElementary(Label route) {
+		long[] visited = new long[criticalNodes.length];
+
+		// The origin is left out since it is also the end of the route without a duplicated origin
+		for(Label label = route; label.getPreviousLabel() != null; label = label.getPreviousLabel()) {
+			int id = label.getCurrent().getId();
+			if( (visited[id >>> 6] & (1L << id)) != 0 ) {
+				return false;
+			}
+			visited[id >>> 6] |= 1L << id;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param useSkyline set to "true" to index the labels of each node with a skyline
+	 * instead of a cost ordered list
+	 */
+	public void setUseSkyline(boolean useSkyline) {
+		this.useSkyline = useSkyline;
+	}
+
+	/**
+	 * @param queuePolicy the order in which nodes waiting to be treated are chosen
+	 */
+	public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+
+	/**
+	 * @param useTimeBuckets set to "true" to extend the labels once in increasing time order
+	 * instead of treating the nodes in the order of the queue policy
+	 */
+	public void setUseTimeBuckets(boolean useTimeBuckets) {
+		this.useTimeBuckets = useTimeBuckets;
+	}
+	
+	/**
+	 * @return number of relaxed problems solved during the last resolution
+	 */
+	public int getNbIterations() {
+		return nbIterations;
+	}
+
+	/**
+	 * @return number of labels extended during the last resolution, every iteration included
+	 */
+	public long getNbExtensions() {
+		return nbExtensions;
+	}
+
+	/**
+	 * @return true if the last resolution was stopped by the time limit, so a missing negative route proves nothing
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+}
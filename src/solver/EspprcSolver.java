@@ -86,7 +86,8 @@ public class EspprcSolver {
 
 			this.addTimeWindowsConstraints(cplex, x, s);
 
-			cplex.exportModel("ESPPRCModel.lp");
+			// One file per instance, since instances may be solved at the same time
+			cplex.exportModel("ESPPRCModel_" + instance.getName() + ".lp");
 
 			// Solve
 			long startTime = System.nanoTime();
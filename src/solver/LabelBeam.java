@@ -0,0 +1,117 @@
+package solver;
+
+import model.Customer;
+import model.LabelStore;
+import model.Resources;
+
+/**
+ * Heuristic label retention of a beam search: when a node holds more labels than the beam width,
+ * only the cheapest one and the best scored others are kept. The score rewards a low cost, a large time slack
+ * before the end of the time window of the node and visited nodes differing from the ones of the kept labels,
+ * so the beam does not fill up with near identical routes.
+ * @author pablo
+ *
+ */
+public class LabelBeam {
+
+	/** Weight of the cost in the score, the cheapest label scoring it in full */
+	private static final double COST_WEIGHT = 1;
+
+	/** Weight of the time slack in the score, a label at the start of the time window scoring it in full */
+	private static final double SLACK_WEIGHT = 0.5;
+
+	/** Weight of the diversity in the score, a label sharing no node with the kept labels scoring it in full */
+	private static final double DIVERSITY_WEIGHT = 0.5;
+
+	/** Maximum number of labels kept at each node */
+	private int beamWidth;
+
+	/**
+	 * @param beamWidth maximum number of labels kept at each node, no limit if it is not positive
+	 */
+	public LabelBeam(int beamWidth) {
+		this.beamWidth = beamWidth;
+	}
+
+	/**
+	 * Drop the labels of the store that do not fit in the beam
+	 * @param store
+	 */
+	public void apply(LabelStore store) {
+		int size = store.size();
+		if( beamWidth <= 0 || size <= beamWidth ) {
+			return;
+		}
+
+		int nbWords = Resources.getNbWords( store.getNbNodes() );
+		Customer node = store.getNode();
+		double windowLength = node.getEnd() - node.getStart();
+
+		// The labels in increasing cost order
+		int[] slots = new int[size];
+		for(int position = 0; position < size; position++) {
+			slots[position] = store.getIndex(position);
+		}
+		double minCost = store.getCost(slots[0]);
+		double costRange = store.getCost(slots[size - 1]) - minCost;
+
+		// Score of each label without its diversity
+		double[] scores = new double[size];
+		for(int position = 0; position < size; position++) {
+			double cost = costRange > 0 ? 1 - (store.getCost(slots[position]) - minCost) / costRange : 1;
+			double slack = windowLength > 0 ?
+					Math.max( 0, Math.min( 1, (node.getEnd() - store.getTime(slots[position])) / windowLength ) ) : 1;
+			scores[position] = COST_WEIGHT * cost + SLACK_WEIGHT * slack;
+		}
+
+		// The cheapest label is always kept, then the best scored ones one at a time
+		boolean[] kept = new boolean[size];
+		double[] diversities = new double[size];
+		int last = 0;
+		kept[0] = true;
+		for(int nbKept = 1; nbKept < beamWidth; nbKept++) {
+			int best = -1;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for(int position = 1; position < size; position++) {
+				if( kept[position] ) {
+					continue;
+				}
+
+				// Distance to the closest kept label
+				double distance = this.getDistance(store, slots[position], slots[last], nbWords);
+				if( nbKept == 1 || distance < diversities[position] ) {
+					diversities[position] = distance;
+				}
+
+				double score = scores[position] + DIVERSITY_WEIGHT * diversities[position];
+				if( score > bestScore ) {
+					bestScore = score;
+					best = position;
+				}
+			}
+			kept[best] = true;
+			last = best;
+		}
+
+		for(int position = 1; position < size; position++) {
+			if( !kept[position] ) {
+				store.remove( slots[position] );
+			}
+		}
+	}
+
+	/**
+	 * @return the share of the nodes visited by only one of the two labels among the nodes visited by any of them
+	 */
+	private double getDistance(LabelStore store, int slot, int otherSlot, int nbWords) {
+		int nbDifferent = 0;
+		int nbVisited = 0;
+		for(int k = 0; k < nbWords; k++) {
+			long visited = store.getVisitationWord(slot, k);
+			long otherVisited = store.getVisitationWord(otherSlot, k);
+			nbDifferent += Long.bitCount( visited ^ otherVisited );
+			nbVisited += Long.bitCount( visited | otherVisited );
+		}
+		return nbVisited > 0 ? (double) nbDifferent / nbVisited : 0;
+	}
+}
@@ -0,0 +1,111 @@
+package solver;
+
+import java.util.Arrays;
+
+import model.EspprcInstance;
+
+/**
+ * Labels waiting to be extended, grouped by time bucket, referenced by their node and slot.
+ * Unless there would be too many of them, the buckets are as long as the shortest move
+ * between two nodes, so extending a label of a bucket only gives labels of later buckets
+ * and the buckets can be treated once in increasing time order.
+ * @author pablo
+ *
+ */
+public class LabelBuckets {
+
+	/** Maximum number of buckets */
+	private static final int MAX_TIME_BUCKETS = 1024;
+
+	/** Length of a time bucket */
+	private double bucketLength;
+
+	/** Node of each label of each bucket, created when first used */
+	private int[][] nodes;
+
+	/** Slot of each label of each bucket, created when first used */
+	private int[][] slots;
+
+	/** Number of labels of each bucket */
+	private int[] sizes;
+
+	/**
+	 * Create empty buckets covering the time windows of the instance
+	 * @param instance
+	 */
+	public LabelBuckets(EspprcInstance instance) {
+		double horizon = instance.getHorizon();
+		bucketLength = Math.max( Math.min( instance.getShortestMove(), horizon ), horizon / MAX_TIME_BUCKETS );
+		if( bucketLength <= 0 ) {
+			bucketLength = 1;
+		}
+
+		int nbBuckets = (int) (horizon / bucketLength) + 1;
+		nodes = new int[nbBuckets][];
+		slots = new int[nbBuckets][];
+		sizes = new int[nbBuckets];
+	}
+
+	/**
+	 * Add a label to the bucket of its time
+	 * @param node
+	 * @param slot
+	 * @param time
+	 */
+	public void add(int node, int slot, double time) {
+		int bucket = Math.max( 0, Math.min( sizes.length - 1, (int) (time / bucketLength) ) );
+
+		if( nodes[bucket] == null ) {
+			nodes[bucket] = new int[16];
+			slots[bucket] = new int[16];
+		}
+		else if( sizes[bucket] == nodes[bucket].length ) {
+			nodes[bucket] = Arrays.copyOf(nodes[bucket], 2 * sizes[bucket]);
+			slots[bucket] = Arrays.copyOf(slots[bucket], 2 * sizes[bucket]);
+		}
+
+		nodes[bucket][sizes[bucket]] = node;
+		slots[bucket][sizes[bucket]] = slot;
+		sizes[bucket]++;
+	}
+
+	/**
+	 * Release the labels of a bucket already treated
+	 * @param bucket
+	 */
+	public void clear(int bucket) {
+		nodes[bucket] = null;
+		slots[bucket] = null;
+		sizes[bucket] = 0;
+	}
+
+	public int getNbBuckets() {
+		return sizes.length;
+	}
+
+	/**
+	 * @param bucket
+	 * @return number of labels of the bucket
+	 */
+	public int size(int bucket) {
+		return sizes[bucket];
+	}
+
+	/**
+	 * @param bucket
+	 * @param position
+	 * @return the node of the label at the given position of the bucket
+	 */
+	public int getNode(int bucket, int position) {
+		return nodes[bucket][position];
+	}
+
+	/**
+	 * @param bucket
+	 * @param position
+	 * @return the slot of the label at the given position of the bucket
+	 */
+	public int getSlot(int bucket, int position) {
+		return slots[bucket][position];
+	}
+}
@@ -0,0 +1,119 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Labels waiting to be extended, referenced by their node and slot, in a binary heap
+ * so the label with the lowest priority value comes first.
+ * @author pablo
+ *
+ */
+public class LabelHeap {
+
+	/** Priority of each entry, in heap order */
+	private double[] priorities;
+
+	/** Node and slot of each entry, the node in the high half */
+	private long[] entries;
+
+	/** Number of entries */
+	private int size;
+
+	public LabelHeap() {
+		priorities = new double[64];
+		entries = new long[64];
+	}
+
+	/**
+	 * @param node
+	 * @param slot
+	 * @param priority the lower the sooner the label is polled
+	 */
+	public void add(int node, int slot, double priority) {
+		if( size == entries.length ) {
+			priorities = Arrays.copyOf(priorities, 2 * size);
+			entries = Arrays.copyOf(entries, 2 * size);
+		}
+
+		long entry = ((long) node << 32) | (slot & 0xFFFFFFFFL);
+
+		// Sift up
+		int position = size++;
+		while( position > 0 ) {
+			int parent = (position - 1) >>> 1;
+			if( priorities[parent] <= priority ) {
+				break;
+			}
+			priorities[position] = priorities[parent];
+			entries[position] = entries[parent];
+			position = parent;
+		}
+		priorities[position] = priority;
+		entries[position] = entry;
+	}
+
+	/**
+	 * Remove the entry with the lowest priority value
+	 * @return the entry, to be read with getNode and getSlot
+	 */
+	public long poll() {
+		long first = entries[0];
+
+		size--;
+		double priority = priorities[size];
+		long entry = entries[size];
+
+		// Sift down the last entry from the root
+		int position = 0;
+		while( true ) {
+			int child = 2 * position + 1;
+			if( child >= size ) {
+				break;
+			}
+			if( child + 1 < size && priorities[child + 1] < priorities[child] ) {
+				child++;
+			}
+			if( priority <= priorities[child] ) {
+				break;
+			}
+			priorities[position] = priorities[child];
+			entries[position] = entries[child];
+			position = child;
+		}
+		priorities[position] = priority;
+		entries[position] = entry;
+
+		return first;
+	}
+
+	/**
+	 * @return the lowest priority value, the heap must not be empty
+	 */
+	public double peekPriority() {
+		return priorities[0];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param entry
+	 * @return the node of an entry returned by poll
+	 */
+	public static int getNode(long entry) {
+		return (int) (entry >>> 32);
+	}
+
+	/**
+	 * @param entry
+	 * @return the slot of an entry returned by poll
+	 */
+	public static int getSlot(long entry) {
+		return (int) entry;
+	}
+}
@@ -1,21 +1,130 @@
 package solver;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
 import model.Customer;
 import model.EspprcInstance;
 import model.Label;
+import model.LabelStore;
+import model.Resources;
 
 
 public class LabellingSolver {
 	
+	/**
+	 * Extensions between two checks of the deadline, minus one
+	 */
+	private static final int DEADLINE_CHECK_MASK = 63;
+	
 	/**
 	 * An instance containing the graph and the necessary information
 	 */
 	private EspprcInstance instance;
 	
+	/**
+	 * If the labels of each node are indexed with a skyline instead of a cost ordered list
+	 */
+	private boolean useSkyline;
+	
+	/**
+	 * If labels are extended only to the successors left in the difference of the
+	 * successor vector of their node and their unreachable vector
+	 */
+	private boolean useSuccessorVectors;
+	
+	/**
+	 * The order in which nodes waiting to be treated are chosen
+	 */
+	private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+	
+	/**
+	 * The nodes whose visit is remembered at each node, null to remember every visit
+	 */
+	private long[][] memoryVectors;
+	
+	/**
+	 * Labels arriving after this time are stored but not extended
+	 */
+	private double maxExtensionTime = Double.POSITIVE_INFINITY;
+	
+	/**
+	 * If the labels are extended once in increasing time order instead of by node
+	 */
+	private boolean useTimeBuckets;
+	
+	/**
+	 * If the labels that cannot lead to a negative route are discarded
+	 */
+	private boolean useCompletionBounds;
+	
+	/**
+	 * If the label limit keeps the labels of a beam search instead of the cheapest ones
+	 */
+	private boolean useBeamSearch;
+	
+	/**
+	 * The beam of the current resolution, null if the cheapest labels are kept
+	 */
+	private LabelBeam labelBeam;
+	
+	/**
+	 * The bounds on the cost to reach the depot for the current costs, null if not used
+	 */
+	private CompletionBounds completionBounds;
+	
+	/**
+	 * Number of labels extended during the last resolution
+	 */
+	private long nbExtensions;
+	
+	/**
+	 * When the resolution stops, as given by System.nanoTime(), 0 for no limit
+	 */
+	private long deadline;
+	
+	/**
+	 * If the last resolution reached its deadline before extending every label
+	 */
+	private volatile boolean interrupted;
+	
+	/**
+	 * If another thread has asked the resolutions to stop
+	 */
+	private volatile boolean cancelled;
+	
+	/**
+	 * Pool checking the dominance of large batches of extended labels in parallel, null if the extending thread checks it
+	 */
+	private ForkJoinPool dominancePool;
+	
+	/**
+	 * Number of threads extending the labels, a single one if it is less than 2
+	 */
+	private int nbThreads;
+	
+	/**
+	 * Number of threads treating a node in parallel mode, guarded by the lock of the node scheduler
+	 */
+	private int nbBusyWorkers;
+	
+	/**
+	 * The node where routes end
+	 */
+	private int depotIndex;
+	
+	/**
+	 * Number of routes under the target cost after which the resolution stops, no early stop if it is not positive
+	 */
+	private int nbTargetRoutes;
+	
+	/**
+	 * Cost a route reaching the depot must be under to count for the early stop
+	 */
+	private double targetCost;
+	
 	/**
 	 * Initialize the solver with an ESPPRC instance
 	 * @param instance
@@ -30,116 +139,845 @@ public class LabellingSolver {
 	 * @return list containg the non dominated labels generated on each node of the graph
 	 */
 	public ArrayList<Label>[] genFeasibleRoutes(int timeLimit, int labelLimit) {
+		LabelStore[] stores = this.genLabelStores(timeLimit, labelLimit);
 		
-		// Initialization
 		@SuppressWarnings("unchecked")
-		ArrayList<Label>[] labels = new ArrayList[instance.getNbNodes()];
+		ArrayList<Label>[] labels = new ArrayList[stores.length];
+		for(int i = 0; i < stores.length; i++) {
+			labels[i] = stores[i].getLabels(stores);
+		}
+		
+		return labels;
+	}
+	
+	/**
+	 * Solves the problem only building the labels that reach the depot
+	 * @param timeLimit
+	 * @param labelLimit
+	 * @return list containing the non dominated labels of the depot in increasing cost order
+	 */
+	public ArrayList<Label> genDepotLabels(int timeLimit, int labelLimit) {
+		LabelStore[] stores = this.genLabelStores(timeLimit, labelLimit);
+		
+		int depotIndex = instance.isDuplicateOrigin() ? stores.length - 1 : 0;
+		
+		return stores[depotIndex].getLabels(stores);
+	}
+	
+	/**
+	 * Anytime version of the algorithm: the resolution stops at the deadline, checked every few extensions,
+	 * and the cheapest routes stored at the depot so far are returned within the given time
+	 * @param timeLimitNanos time given to the resolution in nanoseconds, no limit if it is not positive
+	 * @param labelLimit
+	 * @param nbRoutes number of routes to return, every non dominated route at the depot if it is not positive
+	 * @return the cheapest routes found in increasing cost order, call isInterrupted to know if the search was complete
+	 */
+	public ArrayList<Label> genAnytimeDepotLabels(long timeLimitNanos, int labelLimit, int nbRoutes) {
+		deadline = timeLimitNanos > 0 ? System.nanoTime() + timeLimitNanos : 0;
+		
+		LabelStore[] stores = this.runLabelling(labelLimit);
+		
+		// The depot store holds the routes not dominated so far in increasing cost order
+		LabelStore depotLabels = stores[depotIndex];
+		int nbReturned = nbRoutes > 0 ? Math.min( nbRoutes, depotLabels.size() ) : depotLabels.size();
+		ArrayList<Label> routes = new ArrayList<Label>( nbReturned );
+		for(int position = 0; position < nbReturned; position++) {
+			routes.add( depotLabels.getLabel( depotLabels.getIndex(position), stores ) );
+		}
+		
+		return routes;
+	}
+	
+	/**
+	 * Best first version of the algorithm: the labels are extended one by one in increasing order of their cost
+	 * plus the completion bound of their node and time, a lower bound on the cost of any route they lead to.
+	 * The routes therefore reach the depot in increasing cost order and the search stops once the requested
+	 * number of routes is found, or once no waiting label can lead to a negative route.
+	 * @param timeLimit in seconds, the search also stops once cancelled
+	 * @param nbRoutes number of routes to find, every negative route is found if it is not positive
+	 * @return the best negative routes in increasing cost order
+	 */
+	public ArrayList<Label> genBestDepotLabels(int timeLimit, int nbRoutes) {
+		int depotIndex = instance.isDuplicateOrigin() ? instance.getNbNodes() - 1 : 0;
+		deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000000L : 0;
+		interrupted = cancelled;
+		
+		// Initialization, the bounds are needed for the priorities
+		LabelStore[] labels = this.initLabelStores();
+		if( completionBounds == null ) {
+			completionBounds = new CompletionBounds( instance );
+		}
+		
+		// Reusable resources where candidates are built before checking dominance
+		Resources extendedResources = new Resources( instance );
 		
 		// Origin node
-		Label originLabel = new Label( instance );
-		labels[0] = new ArrayList<Label>();
-		labels[0].add( originLabel );
+		labels[0].insert( extendedResources, -1, -1 );
+		
+		// Labels waiting to be extended
+		LabelHeap heap = new LabelHeap();
+		heap.add( 0, 0, completionBounds.getBound(0, extendedResources.getTime()) );
+		nbExtensions = 0;
+		
+		ArrayList<Label> routes = new ArrayList<Label>();
+		
+		while( !heap.isEmpty() && heap.peekPriority() < 0 && !interrupted &&
+				(nbRoutes <= 0 || routes.size() < nbRoutes) ) {
+			long entry = heap.poll();
+			int nodeId = LabelHeap.getNode(entry);
+			int index = LabelHeap.getSlot(entry);
+			
+			LabelStore currentLabels = labels[nodeId];
+			if( currentLabels.isRemoved(index) ) {
+				continue;
+			}
+			
+			// No waiting label leads to a cheaper route
+			if( nodeId == depotIndex && currentLabels.getParentNode(index) >= 0 ) {
+				routes.add( currentLabels.getLabel(index, labels) );
+				continue;
+			}
+			
+			if( currentLabels.getTime(index) > maxExtensionTime ) {
+				continue;
+			}
+			
+			Customer currentNode = instance.getNode( nodeId );
+			for(Customer currentSuccessor : this.instance.getSuccessors()[nodeId]) {
+				int successorId = currentSuccessor.getId();
+				if( !currentLabels.isReachable(index, successorId) ) {
+					continue;
+				}
+				
+				currentLabels.load( index, extendedResources );
+				extendedResources.extendResources( this.instance, currentNode, currentSuccessor, this.getMemory(successorId) );
+				this.countExtension();
+				
+				double priority = extendedResources.getCost() + completionBounds.getBound(successorId, extendedResources.getTime());
+				if( priority < 0 && labels[successorId].insert( extendedResources, nodeId, index ) ) {
+					heap.add( successorId, labels[successorId].getNbSlots() - 1, priority );
+				}
+			}
+		}
+		
+		return routes;
+	}
+	
+	/**
+	 * Corresponds to the algorithm described in (Feillet D, 2004) section 4.4
+	 * where the labels of each node are kept in a primitive label store
+	 * @param timeLimit
+	 * @param labelLimit
+	 * @return the label store of each node of the graph
+	 */
+	public LabelStore[] genLabelStores(int timeLimit, int labelLimit) {
+		deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000000L : 0;
+		
+		return this.runLabelling(labelLimit);
+	}
+	
+	/**
+	 * Extend the labels from the origin until no label is left or the deadline is reached
+	 * @param labelLimit
+	 * @return the label store of each node of the graph
+	 */
+	private LabelStore[] runLabelling(int labelLimit) {
+		depotIndex = instance.isDuplicateOrigin() ? instance.getNbNodes() - 1 : 0;
+		interrupted = cancelled;
+		labelBeam = useBeamSearch && labelLimit > 0 ? new LabelBeam( labelLimit ) : null;
 		
-		// Intitialize customer labels
-		for(int i = 1; i < instance.getNbNodes(); i++) {
-			labels[i] = new ArrayList<Label>();
+		if( nbThreads > 1 ) {
+			return this.genParallelLabelStores(labelLimit);
 		}
+		if( useTimeBuckets ) {
+			return this.genBucketLabelStores(labelLimit);
+		}
+		
+		// Initialization
+		LabelStore[] labels = this.initLabelStores();
+		
+		// Reusable resources where candidates are built before checking dominance
+		Resources extendedResources = new Resources( instance );
+		
+		// Origin node
+		labels[0].insert( extendedResources, -1, -1 );
+		
+		// Labels each node received from the node being treated
+		int[] nbNewLabels = new int[instance.getNbNodes()];
+		
+		// Labels extended from the node being treated to one of its successors, with the slots they come from and go to
+		Resources[] extendedBatch = new Resources[0];
+		int[] batchIndexes = new int[0];
+		int[] batchSlots = new int[0];
 		
 		// Customers waiting to be treated
-		Queue<Customer> E = new LinkedList<Customer>();	
-		E.add( instance.getNode(0) );
+		NodeScheduler E = new NodeScheduler( instance, queuePolicy );
+		E.add( 0, 1 );
+		nbExtensions = 0;
 		
-		// To stop the algorithm at a certain time
-		long endTime = System.currentTimeMillis() + timeLimit*1000;
-		boolean inTime = true;
 		// Repeat until E is empty
 		do {
 			// We choose a node in the waiting list
-			Customer currentNode = E.poll();
+			Customer currentNode = instance.getNode( E.poll() );
+			LabelStore currentLabels = labels[currentNode.getId()];
+			
+			// Labels stored since the node was last treated
+			int firstNewSlot = currentLabels.getFirstNewSlot();
+			int nbSlots = currentLabels.getNbSlots();
 			
 			// Exploration of the successors of a node
-			ArrayList<Customer> nodeSuccessors = this.instance.getSuccessors()[currentNode.getId()];
-			for(Customer currentSuccessor : nodeSuccessors) {
-
-				// Set of labels extended from currentNode to currentSuccessor
-				ArrayList<Label> extendedLabels = new ArrayList<Label>();
-				
-				// We extend all currentNode labels
-				int customerId = currentNode.getId();
-				for(Label currentLabel : labels[customerId]) {
-					if( !currentLabel.isExtended() && currentLabel.isReachable( currentSuccessor ) ) {
-						Label extendedLabel = currentLabel.extendLabel( currentSuccessor, this.instance );
-						extendedLabels.add(extendedLabel);
+			if( useSuccessorVectors ) {
+				this.extendToReachableSuccessors(labels, currentNode, firstNewSlot, nbSlots, extendedResources, nbNewLabels);
+			}
+			else {
+				ArrayList<Customer> nodeSuccessors = this.instance.getSuccessors()[currentNode.getId()];
+				for(Customer currentSuccessor : nodeSuccessors) {
+					
+					// We extend the new currentNode labels, then only keep those not dominated
+					int nbExtended = 0;
+					for(int index = firstNewSlot; index < nbSlots && !interrupted; index++) {
+						if( !currentLabels.isRemoved(index) && currentLabels.isReachable(index, currentSuccessor.getId()) &&
+							currentLabels.getTime(index) <= maxExtensionTime ) {
+							if( nbExtended == extendedBatch.length ) {
+								extendedBatch = this.growBatch(extendedBatch, nbExtended + 1);
+								batchIndexes = Arrays.copyOf(batchIndexes, extendedBatch.length);
+								batchSlots = Arrays.copyOf(batchSlots, extendedBatch.length);
+							}
+							currentLabels.load( index, extendedBatch[nbExtended] );
+							extendedBatch[nbExtended].extendResources( this.instance, currentNode, currentSuccessor, this.getMemory(currentSuccessor.getId()) );
+							batchIndexes[nbExtended] = index;
+							nbExtended++;
+							this.countExtension();
+						}
 					}
+					nbNewLabels[currentSuccessor.getId()] += this.storeExtensions(labels, currentSuccessor.getId(), extendedBatch,
+							batchIndexes, nbExtended, currentNode.getId(), batchSlots);
 				}
+			}
+			
+			// End EFF
+			for(int successorId : this.instance.getSuccessorIds( currentNode.getId() )) {
+				this.applyLabelLimit(labels[successorId], labelLimit);
 				
-				ArrayList<Label> successorLabels = labels[currentSuccessor.getId()];
-				
-				boolean resultEFF = this.methodEFF(successorLabels, extendedLabels, labelLimit);
-
-				// End EFF
-				if( resultEFF ) {
-					E.remove( currentSuccessor );
-					E.add( currentSuccessor );
+				if( nbNewLabels[successorId] > 0 ) {
+					E.add( successorId, nbNewLabels[successorId] );
+					nbNewLabels[successorId] = 0;
 				}
 			}
 			
 			// Set labels to extended
-			labels[currentNode.getId()].stream().forEach( label -> label.setExtended(true) );
+			currentLabels.setExtended();
+		}while( !E.isEmpty() && !interrupted );
+		
+		return labels;
+	}
+	
+	/**
+	 * Label setting version of the algorithm: the labels are grouped by time bucket and the buckets treated
+	 * in increasing time order, so each label is extended once and no node is treated again.
+	 * A bucket is at least 1/1024 of the horizon long, which may exceed the shortest move, so it can receive
+	 * labels while it is treated: an extended label may still be dominated by a later one of its bucket,
+	 * which only wastes the extensions already made from it.
+	 * @param labelLimit
+	 * @return the label store of each node of the graph
+	 */
+	private LabelStore[] genBucketLabelStores(int labelLimit) {
+		
+		// Initialization
+		LabelStore[] labels = this.initLabelStores();
+		
+		// Reusable resources where candidates are built before checking dominance
+		Resources extendedResources = new Resources( instance );
+		
+		// Origin node
+		labels[0].insert( extendedResources, -1, -1 );
+		
+		// Labels waiting to be extended
+		LabelBuckets buckets = new LabelBuckets( instance );
+		buckets.add( 0, 0, extendedResources.getTime() );
+		nbExtensions = 0;
+		
+		for(int bucket = 0; bucket < buckets.getNbBuckets() && !interrupted; bucket++) {
 			
-			if( timeLimit > 0 ) {
-				inTime = System.currentTimeMillis() < endTime;
+			// The bucket may receive labels while it is treated if a move is shorter than a bucket
+			for(int position = 0; position < buckets.size(bucket) && !interrupted; position++) {
+				int nodeId = buckets.getNode(bucket, position);
+				int index = buckets.getSlot(bucket, position);
+				
+				LabelStore currentLabels = labels[nodeId];
+				if( currentLabels.isRemoved(index) || currentLabels.getTime(index) > maxExtensionTime ) {
+					continue;
+				}
+				
+				Customer currentNode = instance.getNode( nodeId );
+				for(Customer currentSuccessor : this.instance.getSuccessors()[nodeId]) {
+					int successorId = currentSuccessor.getId();
+					if( !currentLabels.isReachable(index, successorId) ) {
+						continue;
+					}
+					
+					currentLabels.load( index, extendedResources );
+					extendedResources.extendResources( this.instance, currentNode, currentSuccessor, this.getMemory(successorId) );
+					if( this.storeExtension(labels, successorId, extendedResources, nodeId, index) ) {
+						buckets.add( successorId, labels[successorId].getNbSlots() - 1, extendedResources.getTime() );
+					}
+				}
 			}
-		}while( !E.isEmpty() && inTime );
+			buckets.clear(bucket);
+			
+			for(LabelStore nodeLabels : labels) {
+				this.applyLabelLimit(nodeLabels, labelLimit);
+			}
+		}
+		
+		// Set labels to extended
+		if( !interrupted ) {
+			for(LabelStore nodeLabels : labels) {
+				nodeLabels.setExtended();
+			}
+		}
 		
 		return labels;
 	}
 	
 	/**
-	 * The following function corresponds to the EEF method presented in (Feillet D, 2004)
-	 * 
-	 * @param successorLabels
-	 * @param extendedLabels
-	 * @return
+	 * Parallel version of the algorithm: worker threads take the nodes from a shared scheduler
+	 * and extend their new labels at the same time. Each label store is guarded by its own lock:
+	 * the labels of a node are copied holding its lock, extended without any lock,
+	 * and the extensions to a successor are stored together holding the lock of the successor.
+	 * A node may be treated again while it is still being treated, only its labels stored since are extended.
+	 * The successor lists are used, whatever the time bucket and successor vector options.
+	 * @param labelLimit
+	 * @return the label store of each node of the graph
 	 */
-	public boolean methodEFF(ArrayList<Label> successorLabels, ArrayList<Label> extendedLabels, int labelLimit) {
-		// Flag to see if the successor labels have changed
-		boolean hasChanged = false;
-
-		// Check dominance among extended labels
-		for( Label extendedLabel : extendedLabels ) {
-			int removed = 0;
-			for( int i  = 0; i-removed < successorLabels.size(); i++ ) {
-				Label label = successorLabels.get(i-removed);
+	private LabelStore[] genParallelLabelStores(int labelLimit) {
+		
+		// Initialization
+		LabelStore[] labels = this.initLabelStores();
+		
+		// Origin node
+		labels[0].insert( new Resources( instance ), -1, -1 );
+		
+		// Customers waiting to be treated
+		NodeScheduler E = new NodeScheduler( instance, queuePolicy );
+		E.add( 0, 1 );
+		nbExtensions = 0;
+		nbBusyWorkers = 0;
+		
+		Thread[] threads = new Thread[nbThreads];
+		for(int t = 0; t < nbThreads; t++) {
+			threads[t] = new Thread( new Worker(labels, E, labelLimit) );
+			threads[t].start();
+		}
+		
+		// The stores must not change once returned
+		boolean joinInterrupted = false;
+		for(int t = 0; t < nbThreads; t++) {
+			try {
+				threads[t].join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+				joinInterrupted = true;
+				t--;
+			}
+		}
+		if( joinInterrupted ) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return labels;
+	}
+	
+	/**
+	 * A thread of the parallel version, treating nodes until none is waiting nor being treated
+	 */
+	private class Worker implements Runnable {
+		
+		private LabelStore[] labels;
+		
+		/** Shared by the workers, its lock also guards the number of busy workers */
+		private NodeScheduler scheduler;
+		
+		private int labelLimit;
+		
+		/** Copies of the new labels of the node being treated */
+		private Resources[] treatedResources;
+		
+		/** Slots of the new labels of the node being treated */
+		private int[] treatedSlots;
+		
+		/** Extensions of the new labels to the successor being treated */
+		private Resources[] extendedResources;
+		
+		/** Slots of the labels the extensions come from */
+		private int[] extendedSlots;
+		
+		/** Slots where the extensions are stored */
+		private int[] storedSlots;
+		
+		/** Labels each successor has stored from the node being treated */
+		private int[] nbNewLabels;
+		
+		/** Labels extended by the worker */
+		private long nbExtensions;
+		
+		Worker(LabelStore[] labels, NodeScheduler scheduler, int labelLimit) {
+			this.labels = labels;
+			this.scheduler = scheduler;
+			this.labelLimit = labelLimit;
+			this.treatedResources = new Resources[0];
+			this.treatedSlots = new int[0];
+			this.extendedResources = new Resources[0];
+			this.extendedSlots = new int[0];
+			this.storedSlots = new int[0];
+			this.nbNewLabels = new int[instance.getNbNodes()];
+		}
+		
+		@Override
+		public void run() {
+			int nodeId;
+			while( (nodeId = this.takeNode()) >= 0 ) {
+				this.treatNode(nodeId);
 				
-				if( label.dominates(extendedLabel) ) {
-					break;
+				synchronized( scheduler ) {
+					for(int successorId : instance.getSuccessorIds( nodeId )) {
+						if( nbNewLabels[successorId] > 0 ) {
+							scheduler.add( successorId, nbNewLabels[successorId] );
+							nbNewLabels[successorId] = 0;
+						}
+					}
+					nbBusyWorkers--;
+					scheduler.notifyAll();
+				}
+			}
+			
+			synchronized( scheduler ) {
+				LabellingSolver.this.nbExtensions += nbExtensions;
+			}
+		}
+		
+		/**
+		 * Wait for a node to treat while other workers may still add some
+		 * @return the node, -1 once no node is waiting nor being treated or the deadline is reached
+		 */
+		private int takeNode() {
+			synchronized( scheduler ) {
+				while( scheduler.isEmpty() && nbBusyWorkers > 0 && !interrupted ) {
+					try {
+						scheduler.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
 				}
 				
-				if( extendedLabel.dominates(label) ) {
-					successorLabels.remove(i-removed);
-					hasChanged = true;
-					removed++;
+				if( scheduler.isEmpty() || interrupted ) {
+					scheduler.notifyAll();
+					return -1;
 				}
+				
+				nbBusyWorkers++;
+				return scheduler.poll();
 			}
+		}
+		
+		/**
+		 * Extend the labels stored at the node since it was last treated
+		 * @param nodeId
+		 */
+		private void treatNode(int nodeId) {
+			LabelStore currentLabels = labels[nodeId];
 			
-			if( !extendedLabel.isDominated() ) {
-				hasChanged = true;
-				addToList(successorLabels, extendedLabel);
-//				successorLabels.add(extendedLabel);
+			// Copy the new labels so the store can receive others meanwhile
+			int nbTreated = 0;
+			synchronized( currentLabels ) {
+				int nbSlots = currentLabels.getNbSlots();
+				this.ensureCapacity( nbSlots - currentLabels.getFirstNewSlot() );
+				
+				for(int index = currentLabels.getFirstNewSlot(); index < nbSlots; index++) {
+					if( !currentLabels.isRemoved(index) && currentLabels.getTime(index) <= maxExtensionTime ) {
+						currentLabels.load( index, treatedResources[nbTreated] );
+						treatedSlots[nbTreated] = index;
+						nbTreated++;
+					}
+				}
+				currentLabels.setExtended();
+			}
+			
+			Customer currentNode = instance.getNode( nodeId );
+			for(Customer currentSuccessor : instance.getSuccessors()[nodeId]) {
+				int successorId = currentSuccessor.getId();
+				
+				int nbExtended = 0;
+				for(int l = 0; l < nbTreated && !interrupted; l++) {
+					if( !treatedResources[l].isReachable(successorId) ) {
+						continue;
+					}
+					
+					Resources resources = extendedResources[nbExtended];
+					resources.copyFrom( treatedResources[l] );
+					resources.extendResources( instance, currentNode, currentSuccessor, getMemory(successorId) );
+					extendedSlots[nbExtended] = treatedSlots[l];
+					nbExtended++;
+					
+					nbExtensions++;
+					if( deadline != 0 && (nbExtensions & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() >= deadline ) {
+						interrupted = true;
+					}
+				}
+				
+				if( nbExtended > 0 ) {
+					LabelStore successorLabels = labels[successorId];
+					synchronized( successorLabels ) {
+						nbNewLabels[successorId] += storeExtensions(labels, successorId, extendedResources, extendedSlots, nbExtended,
+								nodeId, storedSlots);
+						applyLabelLimit(successorLabels, labelLimit);
+					}
+				}
 			}
 		}
+		
+		/**
+		 * Grow the buffers so they hold the given number of labels
+		 * @param nbLabels
+		 */
+		private void ensureCapacity(int nbLabels) {
+			if( nbLabels <= treatedResources.length ) {
+				return;
+			}
+			
+			treatedResources = growBatch(treatedResources, nbLabels);
+			extendedResources = growBatch(extendedResources, nbLabels);
+			treatedSlots = Arrays.copyOf(treatedSlots, treatedResources.length);
+			extendedSlots = Arrays.copyOf(extendedSlots, treatedResources.length);
+			storedSlots = Arrays.copyOf(storedSlots, treatedResources.length);
+		}
+	}
+	
+	/**
+	 * Create an empty label store for each node, and the completion bounds for the current costs if they are used
+	 * @return the label stores
+	 */
+	private LabelStore[] initLabelStores() {
+		LabelStore[] labels = new LabelStore[instance.getNbNodes()];
+		for(int i = 0; i < instance.getNbNodes(); i++) {
+			labels[i] = new LabelStore( instance.getNode(i), instance.getNbNodes(), useSkyline );
+		}
+		
+		completionBounds = useCompletionBounds ? new CompletionBounds( instance ) : null;
+		
+		return labels;
+	}
+	
+	/**
+	 * Extend each new label of the current node to the successors it can reach,
+	 * going through the set bits of the successor vector of the node minus the unreachable vector of the label
+	 * 
+	 * @param labels
+	 * @param currentNode
+	 * @param firstNewSlot first slot of the current node to extend
+	 * @param nbSlots slot after the last one to extend
+	 * @param extendedResources reusable resources where candidates are built
+	 * @param nbNewLabels incremented for each label a successor keeps
+	 */
+	private void extendToReachableSuccessors(LabelStore[] labels, Customer currentNode, int firstNewSlot, int nbSlots,
+			Resources extendedResources, int[] nbNewLabels) {
+		LabelStore currentLabels = labels[currentNode.getId()];
+		long[] successorVector = this.instance.getSuccessorVector( currentNode.getId() );
+		
+		for(int index = firstNewSlot; index < nbSlots && !interrupted; index++) {
+			if( currentLabels.isRemoved(index) || currentLabels.getTime(index) > maxExtensionTime ) {
+				continue;
+			}
+			
+			for(int k = 0; k < successorVector.length; k++) {
+				long reachable = successorVector[k] & ~currentLabels.getUnreachableWord(index, k);
 				
-		if( labelLimit > 0 && successorLabels.size() > labelLimit ) {
-			for( int i=0 ; i < successorLabels.size() - labelLimit; i++ ) {
-				int removeIndex = successorLabels.size()-1;
-				successorLabels.remove( removeIndex );
+				while( reachable != 0 ) {
+					int successorId = (k << 6) + Long.numberOfTrailingZeros(reachable);
+					reachable &= reachable - 1;
+					
+					currentLabels.load( index, extendedResources );
+					extendedResources.extendResources( this.instance, currentNode, this.instance.getNode(successorId), this.getMemory(successorId) );
+					if( this.storeExtension(labels, successorId, extendedResources, currentNode.getId(), index) ) {
+						nbNewLabels[successorId]++;
+					}
+				}
 			}
 		}
-
-		return hasChanged;
 	}
-
+	
+	/**
+	 * Store an extended label in the store of its node unless it is hopeless or dominated,
+	 * and check the deadline and the early stop
+	 * @param labels
+	 * @param nodeId the node of the extended label
+	 * @param extendedResources
+	 * @param previousNode the node of the label that was extended
+	 * @param previousIndex the slot of the label that was extended
+	 * @return true if the label has been stored
+	 */
+	private boolean storeExtension(LabelStore[] labels, int nodeId, Resources extendedResources, int previousNode, int previousIndex) {
+		this.countExtension();
+		
+		if( this.isHopeless(nodeId, extendedResources) ||
+			!labels[nodeId].insert( extendedResources, previousNode, previousIndex ) ) {
+			return false;
+		}
+		
+		if( nodeId == depotIndex ) {
+			this.checkEarlyStop( labels[nodeId] );
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Store labels extended from the same node to the same successor as storeExtension would one at a time,
+	 * their dominance being checked in parallel on large batches if the pool is used.
+	 * In parallel mode it is called holding the lock of the store of the successor.
+	 * @param labels
+	 * @param nodeId the node of the extended labels
+	 * @param batch the extended labels, reordered
+	 * @param previousIndexes the slot of the label each extended label comes from, reordered
+	 * @param nbExtended number of extended labels
+	 * @param previousNode the node of the labels that were extended
+	 * @param slots receives the slot of each stored label
+	 * @return number of stored labels
+	 */
+	private int storeExtensions(LabelStore[] labels, int nodeId, Resources[] batch, int[] previousIndexes, int nbExtended,
+			int previousNode, int[] slots) {
+		
+		// Hopeless labels are left out, the others keeping their order
+		int nbCandidates = 0;
+		for(int e = 0; e < nbExtended; e++) {
+			if( !this.isHopeless(nodeId, batch[e]) ) {
+				Resources candidate = batch[e];
+				batch[e] = batch[nbCandidates];
+				batch[nbCandidates] = candidate;
+				previousIndexes[nbCandidates] = previousIndexes[e];
+				nbCandidates++;
+			}
+		}
+		
+		int nbStored = labels[nodeId].insertAll( batch, nbCandidates, previousNode, previousIndexes, slots, dominancePool );
+		
+		if( nodeId == depotIndex && nbStored > 0 ) {
+			this.checkEarlyStop( labels[nodeId] );
+		}
+		
+		return nbStored;
+	}
+	
+	/**
+	 * Count an extension and check the deadline every few ones
+	 */
+	private void countExtension() {
+		nbExtensions++;
+		if( deadline != 0 && (nbExtensions & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() >= deadline ) {
+			interrupted = true;
+		}
+	}
+	
+	/**
+	 * Stop the resolution once the depot holds enough routes under the target cost,
+	 * the routes dominated since they reached it not counting
+	 * @param depotLabels the store of the depot, after a label has been stored in it
+	 */
+	private void checkEarlyStop(LabelStore depotLabels) {
+		if( nbTargetRoutes > 0 && depotLabels.size() >= nbTargetRoutes &&
+			depotLabels.getCost( depotLabels.getIndex(nbTargetRoutes - 1) ) < targetCost ) {
+			interrupted = true;
+		}
+	}
+	
+	/**
+	 * @param batch
+	 * @param capacity
+	 * @return the batch grown so it holds at least the given number of labels, with new resources
+	 */
+	private Resources[] growBatch(Resources[] batch, int capacity) {
+		if( capacity <= batch.length ) {
+			return batch;
+		}
+		
+		int previousCapacity = batch.length;
+		batch = Arrays.copyOf(batch, Math.max( capacity, 2 * previousCapacity ));
+		for(int e = previousCapacity; e < batch.length; e++) {
+			batch[e] = new Resources( instance );
+		}
+		return batch;
+	}
+	
+	/**
+	 * Drop the labels of a store exceeding the label limit, keeping the cheapest ones or the ones of the beam
+	 * @param store
+	 * @param labelLimit no limit if it is not positive
+	 */
+	private void applyLabelLimit(LabelStore store, int labelLimit) {
+		if( labelBeam != null ) {
+			labelBeam.apply(store);
+		}
+		else {
+			store.applyLabelLimit(labelLimit);
+		}
+	}
+	
+	/**
+	 * @param nodeId
+	 * @param resources the resources of a label at the node
+	 * @return true if the completion bounds prove the label cannot lead to a negative route
+	 */
+	private boolean isHopeless(int nodeId, Resources resources) {
+		return completionBounds != null && completionBounds.isHopeless(nodeId, resources.getCost(), resources.getTime());
+	}
+	
+	/**
+	 * @param nodeId
+	 * @return the nodes whose visit is remembered at the node, null if every visit is
+	 */
+	private long[] getMemory(int nodeId) {
+		return memoryVectors == null ? null : memoryVectors[nodeId];
+	}
+	
+	/**
+	 * Relax elementarity into ng-routes: a label only remembers its visits to the ng-neighbourhood
+	 * of its node, so the routes at the depot may visit a customer more than once
+	 * @param ngNeighbourhoodSize number of nearest customers in each neighbourhood,
+	 * the routes are elementary if it is not positive
+	 */
+	public void setNgNeighbourhoodSize(int ngNeighbourhoodSize) {
+		if( ngNeighbourhoodSize > 0 ) {
+			instance.buildNgNeighbourhoods(ngNeighbourhoodSize);
+			this.setNgNeighbourhoods( instance.getNgNeighbourhoods() );
+		}
+		else {
+			this.setNgNeighbourhoods( null );
+		}
+	}
+	
+	/**
+	 * Relax elementarity into ng-routes with neighbourhoods already built for the instance,
+	 * so solvers of the same instance do not build them again
+	 * @param ngNeighbourhoods the ng-neighbourhood of each node, null for elementary routes
+	 */
+	public void setNgNeighbourhoods(long[][] ngNeighbourhoods) {
+		this.memoryVectors = ngNeighbourhoods;
+	}
+	
+	/**
+	 * @param memoryVectors the nodes whose visit is remembered at each node, null to remember every visit
+	 */
+	void setMemoryVectors(long[][] memoryVectors) {
+		this.memoryVectors = memoryVectors;
+	}
+	
+	/**
+	 * @param useSkyline set to "true" to index the labels of each node with a skyline
+	 * instead of a cost ordered list
+	 */
+	public void setUseSkyline(boolean useSkyline) {
+		this.useSkyline = useSkyline;
+	}
+	
+	/**
+	 * @param useSuccessorVectors set to "true" to go through the reachable successors of each label
+	 * with bit operations instead of checking every successor of its node, the time buckets and the
+	 * workers always check every successor
+	 */
+	public void setUseSuccessorVectors(boolean useSuccessorVectors) {
+		this.useSuccessorVectors = useSuccessorVectors;
+	}
+	
+	/**
+	 * @param queuePolicy the order in which nodes waiting to be treated are chosen
+	 */
+	public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+		this.queuePolicy = queuePolicy;
+	}
+	
+	/**
+	 * @param maxExtensionTime labels arriving after this time are stored but not extended
+	 */
+	public void setMaxExtensionTime(double maxExtensionTime) {
+		this.maxExtensionTime = maxExtensionTime;
+	}
+	
+	/**
+	 * @param useTimeBuckets set to "true" to extend the labels once in increasing time order
+	 * instead of treating the nodes in the order of the queue policy
+	 */
+	public void setUseTimeBuckets(boolean useTimeBuckets) {
+		this.useTimeBuckets = useTimeBuckets;
+	}
+	
+	/**
+	 * @param useCompletionBounds set to "true" to bound the cost to reach the depot before each resolution
+	 * and discard the labels that cannot lead to a negative route, the depot only keeping negative routes
+	 */
+	public void setUseCompletionBounds(boolean useCompletionBounds) {
+		this.useCompletionBounds = useCompletionBounds;
+	}
+	
+	/**
+	 * @param useBeamSearch set to "true" to keep, when a node exceeds the label limit, the labels scored best
+	 * on cost, time slack and diversity of their visited nodes instead of the cheapest ones
+	 */
+	public void setUseBeamSearch(boolean useBeamSearch) {
+		this.useBeamSearch = useBeamSearch;
+	}
+	
+	/**
+	 * @param nbThreads number of threads extending the labels of different nodes at the same time,
+	 * the labels are extended by the calling thread if it is less than 2
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = nbThreads;
+	}
+	
+	/**
+	 * @param useParallelDominance set to "true" to check the dominance of large batches of labels extended
+	 * from a node to a successor on the common fork join pool, the stored labels being the same
+	 */
+	public void setUseParallelDominance(boolean useParallelDominance) {
+		this.dominancePool = useParallelDominance ? ForkJoinPool.commonPool() : null;
+	}
+	
+	/**
+	 * Stop the resolutions as soon as the depot holds enough cheap routes not dominated, instead of extending every label.
+	 * A label limit under the number of routes, or the beam, may still drop some of them afterwards.
+	 * The best first version already stops after a given number of routes and ignores it.
+	 * @param nbTargetRoutes number of routes under the target cost to find, no early stop if it is not positive
+	 * @param targetCost cost a route must be under to count
+	 */
+	public void setEarlyStop(int nbTargetRoutes, double targetCost) {
+		this.nbTargetRoutes = nbTargetRoutes;
+		this.targetCost = targetCost;
+	}
+	
+	/**
+	 * @return number of labels extended during the last resolution
+	 */
+	public long getNbExtensions() {
+		return nbExtensions;
+	}
+	
+	/**
+	 * @return true if the last resolution reached its time limit or its early stop, or was cancelled,
+	 * before extending every label, so its routes may not be the best ones
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+	
+	/**
+	 * Stop the running labelling resolution, and any later one, from another thread,
+	 * the resolution returning the labels built so far
+	 */
+	public void cancel() {
+		cancelled = true;
+		interrupted = true;
+	}
+	
 	/**
 	 * Just a dummy function for debug purposes
 	 * 
@@ -160,23 +998,6 @@ public class LabellingSolver {
 		return hasChanged;
 	}
 	
-	/**
-	 * Add label to list following comparison rules
-	 * @param successorLabels
-	 * @param extendedLabel
-	 */
-	private void addToList(ArrayList<Label> successorLabels, Label extendedLabel) {	
-		for( int i=0; i < successorLabels.size(); i++ ) {
-			int comparison = successorLabels.get(i).compareTo(extendedLabel);
-			if(comparison  > 0) {
-				successorLabels.add(i, extendedLabel);
-				return;
-			}
-		}
-		
-		successorLabels.add(extendedLabel);
-	}
-
 	/**
 	 * Print function for debug purposes
 	 * 
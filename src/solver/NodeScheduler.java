@@ -0,0 +1,219 @@
+package solver;
+
+import model.EspprcInstance;
+
+/**
+ * Nodes waiting to have their labels extended, kept in a ring buffer of node ids
+ * with a membership array so adding or moving a node does not scan the queue.
+ * @author pablo
+ *
+ */
+public class NodeScheduler {
+
+	/**
+	 * Order in which the waiting nodes are treated
+	 */
+	public enum Policy {
+		/** The node waiting the longest, a node added again goes to the back */
+		FIFO,
+		/** The node added the latest */
+		LIFO,
+		/** The node with the earliest time window start */
+		EARLIEST_START,
+		/** The node that received the most labels since it was last treated */
+		MOST_NEW_LABELS
+	}
+
+	/** The order in which nodes are treated */
+	private Policy policy;
+
+	/** Start of the time window of each node */
+	private double[] start;
+
+	/** Node ids in insertion order, it may hold stale entries of nodes added again */
+	private int[] buffer;
+
+	/** Position of the first entry of the buffer */
+	private int head;
+
+	/** Number of entries in the buffer */
+	private int count;
+
+	/** If the node is waiting */
+	private boolean[] queued;
+
+	/** Number of entries of each node in the buffer */
+	private int[] nbEntries;
+
+	/** Labels received by each node since it was last treated */
+	private int[] nbNewLabels;
+
+	/** Number of waiting nodes */
+	private int size;
+
+	/**
+	 * @param instance
+	 * @param policy
+	 */
+	public NodeScheduler(EspprcInstance instance, Policy policy) {
+		this.policy = policy;
+
+		int nbNodes = instance.getNbNodes();
+		this.start = new double[nbNodes];
+		for(int i = 0; i < nbNodes; i++) {
+			this.start[i] = instance.getNode(i).getStart();
+		}
+
+		this.buffer = new int[Integer.highestOneBit(nbNodes) << 1];
+		this.queued = new boolean[nbNodes];
+		this.nbEntries = new int[nbNodes];
+		this.nbNewLabels = new int[nbNodes];
+	}
+
+	/**
+	 * Add a node to the waiting nodes. Under FIFO and LIFO a waiting node is moved
+	 * as if it was added for the first time.
+	 *
+	 * @param node
+	 * @param nbLabels number of labels the node has just received
+	 */
+	public void add(int node, int nbLabels) {
+		nbNewLabels[node] += nbLabels;
+
+		if( queued[node] ) {
+			if( policy != Policy.FIFO && policy != Policy.LIFO ) {
+				return;
+			}
+		}
+		else {
+			queued[node] = true;
+			size++;
+		}
+
+		// Older entries of the node are skipped when polled
+		this.push(node);
+		nbEntries[node]++;
+	}
+
+	/**
+	 * Remove the next node to treat
+	 * @return the node id, -1 if there is no waiting node
+	 */
+	public int poll() {
+		if( size == 0 ) {
+			return -1;
+		}
+
+		int node;
+		switch( policy ) {
+		case FIFO:
+			node = this.pollFirst();
+			break;
+		case LIFO:
+			node = this.pollLast();
+			break;
+		default:
+			node = this.pollBest();
+			break;
+		}
+
+		queued[node] = false;
+		nbNewLabels[node] = 0;
+		size--;
+
+		return node;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int node) {
+		return queued[node];
+	}
+
+	/**
+	 * @return the oldest entry that is the latest one of its node
+	 */
+	private int pollFirst() {
+		while( true ) {
+			int node = buffer[head];
+			head = (head + 1) & (buffer.length - 1);
+			count--;
+			nbEntries[node]--;
+
+			if( nbEntries[node] == 0 ) {
+				return node;
+			}
+		}
+	}
+
+	/**
+	 * @return the newest entry of a waiting node
+	 */
+	private int pollLast() {
+		while( true ) {
+			count--;
+			int node = buffer[(head + count) & (buffer.length - 1)];
+			nbEntries[node]--;
+
+			if( queued[node] ) {
+				return node;
+			}
+		}
+	}
+
+	/**
+	 * Under priority policies every waiting node has a single entry
+	 * @return the waiting node with the best priority, the oldest one on ties
+	 */
+	private int pollBest() {
+		int mask = buffer.length - 1;
+
+		int best = 0;
+		for( int i = 1; i < count; i++ ) {
+			if( this.isBetter(buffer[(head + i) & mask], buffer[(head + best) & mask]) ) {
+				best = i;
+			}
+		}
+
+		int node = buffer[(head + best) & mask];
+		nbEntries[node]--;
+
+		// Close the gap keeping the insertion order
+		for( int i = best; i < count - 1; i++ ) {
+			buffer[(head + i) & mask] = buffer[(head + i + 1) & mask];
+		}
+		count--;
+
+		return node;
+	}
+
+	/**
+	 * @return true if the node should be treated before the other one
+	 */
+	private boolean isBetter(int node, int other) {
+		if( policy == Policy.EARLIEST_START ) {
+			return start[node] < start[other];
+		}
+		return nbNewLabels[node] > nbNewLabels[other];
+	}
+
+	/**
+	 * Append an entry at the back of the buffer, growing it if it is full
+	 * @param node
+	 */
+	private void push(int node) {
+		if( count == buffer.length ) {
+			int[] grown = new int[2 * buffer.length];
+			for( int i = 0; i < count; i++ ) {
+				grown[i] = buffer[(head + i) & (buffer.length - 1)];
+			}
+			buffer = grown;
+			head = 0;
+		}
+
+		buffer[(head + count) & (buffer.length - 1)] = node;
+		count++;
+	}
+}
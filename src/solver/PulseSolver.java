@@ -0,0 +1,389 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import model.Customer;
+import model.EspprcInstance;
+import model.Label;
+import model.Resources;
+
+/**
+ * The pulse algorithm (Lozano L, Duque D, Medaglia A L, 2016): paths are explored depth first from the origin,
+ * a pulse being stopped when its path is infeasible, when the completion bounds show it cannot beat
+ * the routes already found, when removing its last node gives a better path (rollback),
+ * or when a path kept at its node dominates it. Only the current path and the routes returned are kept in memory.
+ * The rollback and the dominance pruning only keep a route better in every resource than the pruned ones,
+ * so they are used when a single best route or the routes not dominated at the depot are wanted:
+ * the K best routes are otherwise found with the bound pruning alone.
+ * @author pablo
+ *
+ */
+public class PulseSolver {
+
+	/** Number of pulses between two checks of the time limit */
+	private static final int TIME_CHECK_PERIOD = 1024;
+
+	/** Number of paths kept at each node for the dominance pruning: the cheapest, the earliest and the lightest */
+	private static final int NB_CACHED_PATHS = 3;
+
+	/**
+	 * An instance containing the graph and the necessary information
+	 */
+	private EspprcInstance instance;
+
+	/** The node where routes end */
+	private int depotIndex;
+
+	/** Number of 64 bit words of a node vector */
+	private int nbWords;
+
+	/** Positions in the successor list of each node, in increasing arc cost order */
+	private int[][] successorOrders;
+
+	/** Bounds on the cost to reach the depot for the current costs */
+	private CompletionBounds completionBounds;
+
+	/** Nodes of the current path */
+	private int[] path;
+
+	/** Cost of the current path at each of its nodes */
+	private double[] pathCost;
+
+	/** Time of the current path at each of its nodes */
+	private double[] pathTime;
+
+	/** Nodes of the current path */
+	private long[] visited;
+
+	/** Cost, time and demand of the paths kept at each node */
+	private double[][] cachedCost;
+
+	private double[][] cachedTime;
+
+	private double[][] cachedDemand;
+
+	/** Nodes visited by the paths kept at each node, nbWords per path, null if there is no path */
+	private long[][][] cachedVisited;
+
+	/** Best routes found, in increasing cost order */
+	private ArrayList<Label> routes;
+
+	/** Number of routes to find, the negative routes not dominated at the depot are kept if it is not positive */
+	private int nbRoutes;
+
+	/** If the rollback and the dominance pruning are used */
+	private boolean usePathPruning;
+
+	/** To stop the algorithm at a certain time, no limit if it is not positive */
+	private int timeLimit;
+
+	private long endTime;
+
+	private boolean inTime;
+
+	/**
+	 * Number of pulses during the last resolution
+	 */
+	private long nbPulses;
+
+	/**
+	 * Initialize the solver with an ESPPRC instance
+	 * @param instance
+	 */
+	public PulseSolver(EspprcInstance instance) {
+		this.instance = instance;
+		this.depotIndex = instance.isDuplicateOrigin() ? instance.getNbNodes() - 1 : 0;
+		this.nbWords = Resources.getNbWords( instance.getNbNodes() );
+	}
+
+	/**
+	 * Find the best negative routes reaching the depot
+	 * @param timeLimit
+	 * @param nbRoutes number of routes to find, if it is not positive the negative routes are kept
+	 * unless a route found costs less, reaches the depot earlier and is lighter
+	 * @return the routes in increasing cost order, empty if there is no negative route
+	 */
+	public ArrayList<Label> genDepotLabels(int timeLimit, int nbRoutes) {
+		int nbNodes = instance.getNbNodes();
+
+		this.nbRoutes = nbRoutes;
+		this.usePathPruning = nbRoutes <= 1;
+		this.routes = new ArrayList<Label>();
+		this.completionBounds = new CompletionBounds( instance );
+		this.sortSuccessors();
+
+		path = new int[nbNodes + 1];
+		pathCost = new double[nbNodes + 1];
+		pathTime = new double[nbNodes + 1];
+		visited = new long[nbWords];
+
+		cachedCost = new double[nbNodes][NB_CACHED_PATHS];
+		cachedTime = new double[nbNodes][NB_CACHED_PATHS];
+		cachedDemand = new double[nbNodes][NB_CACHED_PATHS];
+		cachedVisited = new long[nbNodes][NB_CACHED_PATHS][];
+
+		this.timeLimit = timeLimit;
+		endTime = System.currentTimeMillis() + timeLimit*1000;
+		inTime = true;
+		nbPulses = 0;
+
+		// Origin node
+		visited[0] |= 1L;
+		this.pulse( 0, 0, 0, 0, instance.getNode(0).getDemand() );
+
+		return routes;
+	}
+
+	/**
+	 * Extend the current path to every successor of its last node that survives the pruning
+	 * @param depth position of the node in the path
+	 * @param nodeId
+	 * @param cost
+	 * @param time
+	 * @param demand
+	 */
+	private void pulse(int depth, int nodeId, double cost, double time, double demand) {
+		path[depth] = nodeId;
+		pathCost[depth] = cost;
+		pathTime[depth] = time;
+
+		if( depth > 0 && nodeId == depotIndex ) {
+			this.addRoute(depth, demand);
+			return;
+		}
+
+		nbPulses++;
+		if( timeLimit > 0 && nbPulses % TIME_CHECK_PERIOD == 0 ) {
+			inTime = System.currentTimeMillis() < endTime;
+		}
+		if( !inTime ) {
+			return;
+		}
+
+		Customer currentNode = instance.getNode( nodeId );
+		int[] successorIds = instance.getSuccessorIds( nodeId );
+		double[] latestDepartures = instance.getLatestDepartures( nodeId );
+		int[] demands = instance.getDemands();
+
+		for(int k : successorOrders[nodeId]) {
+			int successorId = successorIds[k];
+			boolean isDepot = successorId == depotIndex;
+
+			if( time > latestDepartures[k] ||
+				demand + demands[successorId] > instance.getCapacity() ||
+				(!isDepot && (visited[successorId >>> 6] & (1L << successorId)) != 0) ) {
+				continue;
+			}
+
+			// Same time computation as the labels
+			Customer successor = instance.getNode( successorId );
+			double nextTime = time;
+			if( successor.getStart() > time + currentNode.getServiceTime() + instance.getDistance(nodeId, successorId) ) {
+				nextTime = successor.getStart();
+			}
+			else {
+				nextTime += currentNode.getServiceTime() + instance.getDistance(nodeId, successorId);
+			}
+			double nextCost = cost + instance.getCost( nodeId, successorId );
+			double nextDemand = demand + demands[successorId];
+
+			// Bound pruning
+			if( nextCost + completionBounds.getBound(successorId, nextTime) >= this.getCostThreshold() ) {
+				continue;
+			}
+
+			// Rollback pruning
+			if( usePathPruning && depth > 0 && this.isRolledBack(depth, successorId, nextCost, nextTime) ) {
+				continue;
+			}
+
+			if( isDepot ) {
+				this.pulse( depth + 1, successorId, nextCost, nextTime, nextDemand );
+				continue;
+			}
+
+			// Dominance pruning
+			visited[successorId >>> 6] |= 1L << successorId;
+			if( !usePathPruning ) {
+				this.pulse( depth + 1, successorId, nextCost, nextTime, nextDemand );
+			}
+			else if( !this.isDominated(successorId, nextCost, nextTime, nextDemand) ) {
+				this.cachePath(successorId, nextCost, nextTime, nextDemand);
+				this.pulse( depth + 1, successorId, nextCost, nextTime, nextDemand );
+			}
+			visited[successorId >>> 6] &= ~(1L << successorId);
+		}
+	}
+
+	/**
+	 * @return the cost a new route must be under to be kept
+	 */
+	private double getCostThreshold() {
+		if( nbRoutes > 0 && routes.size() >= nbRoutes ) {
+			return Math.min( 0, routes.get(nbRoutes - 1).getCost() );
+		}
+		return 0;
+	}
+
+	/**
+	 * If going to the successor straight from the node before the last one of the path
+	 * is not more expensive nor later, so the path without its last node does better
+	 * @param depth position of the last node of the path
+	 * @param successorId
+	 * @param nextCost
+	 * @param nextTime
+	 * @return
+	 */
+	private boolean isRolledBack(int depth, int successorId, double nextCost, double nextTime) {
+		int previousId = path[depth - 1];
+		if( (instance.getSuccessorVector(previousId)[successorId >>> 6] & (1L << successorId)) == 0 ) {
+			return false;
+		}
+
+		Customer previousNode = instance.getNode( previousId );
+		Customer successor = instance.getNode( successorId );
+		double time = pathTime[depth - 1];
+		double distance = instance.getDistance( previousId, successorId );
+		double directTime = successor.getStart() > time + previousNode.getServiceTime() + distance ?
+				successor.getStart() : time + previousNode.getServiceTime() + distance;
+
+		return pathCost[depth - 1] + instance.getCost(previousId, successorId) <= nextCost && directTime <= nextTime;
+	}
+
+	/**
+	 * If a path kept at the node costs less, ends earlier, is lighter and visits a subset of the nodes
+	 * of the current path extended to the node, so every extension of the latter is also one of the kept path
+	 */
+	private boolean isDominated(int nodeId, double cost, double time, double demand) {
+		for(int e = 0; e < NB_CACHED_PATHS; e++) {
+			long[] cached = cachedVisited[nodeId][e];
+			if( cached == null || cachedCost[nodeId][e] > cost || cachedTime[nodeId][e] > time ||
+				cachedDemand[nodeId][e] > demand ) {
+				continue;
+			}
+
+			boolean subset = true;
+			for(int w = 0; w < nbWords && subset; w++) {
+				subset = (cached[w] & ~visited[w]) == 0;
+			}
+			if( subset ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Keep the current path extended to the node if it is the cheapest, the earliest or the lightest one so far
+	 */
+	private void cachePath(int nodeId, double cost, double time, double demand) {
+		for(int e = 0; e < NB_CACHED_PATHS; e++) {
+			boolean better = cachedVisited[nodeId][e] == null;
+			if( !better ) {
+				switch( e ) {
+				case 0:
+					better = cost < cachedCost[nodeId][e];
+					break;
+				case 1:
+					better = time < cachedTime[nodeId][e];
+					break;
+				default:
+					better = demand < cachedDemand[nodeId][e];
+					break;
+				}
+			}
+
+			if( better ) {
+				if( cachedVisited[nodeId][e] == null ) {
+					cachedVisited[nodeId][e] = new long[nbWords];
+				}
+				System.arraycopy(visited, 0, cachedVisited[nodeId][e], 0, nbWords);
+				cachedCost[nodeId][e] = cost;
+				cachedTime[nodeId][e] = time;
+				cachedDemand[nodeId][e] = demand;
+			}
+		}
+	}
+
+	/**
+	 * Build the route of the current path and keep it among the best routes
+	 * @param depth position of the depot in the path
+	 * @param demand demand of the current path
+	 */
+	private void addRoute(int depth, double demand) {
+		double cost = pathCost[depth];
+		double time = pathTime[depth];
+
+		// Without a number of routes, only the routes not dominated at the depot are kept
+		if( nbRoutes <= 0 ) {
+			for(Label other : routes) {
+				if( other.getCost() > cost ) {
+					break;
+				}
+				Resources resources = other.getResources();
+				if( resources.getTime() <= time && resources.getDemand() <= demand ) {
+					return;
+				}
+			}
+			Iterator<Label> iterator = routes.iterator();
+			while( iterator.hasNext() ) {
+				Resources resources = iterator.next().getResources();
+				if( resources.getCost() >= cost && resources.getTime() >= time && resources.getDemand() >= demand ) {
+					iterator.remove();
+				}
+			}
+		}
+
+		Label route = new Label(instance);
+		for(int d = 1; d <= depth; d++) {
+			route = route.extendLabel( instance.getNode(path[d]), instance );
+		}
+
+		int position = Collections.binarySearch(routes, route);
+		routes.add( position < 0 ? -position - 1 : position, route );
+
+		if( nbRoutes > 0 && routes.size() > nbRoutes ) {
+			routes.remove( routes.size() - 1 );
+		}
+	}
+
+	/**
+	 * Sort the successors of each node by increasing arc cost, so cheap routes are found early
+	 * and the bound pruning gets tighter sooner
+	 */
+	private void sortSuccessors() {
+		successorOrders = new int[instance.getNbNodes()][];
+		for(int i = 0; i < instance.getNbNodes(); i++) {
+			int[] successorIds = instance.getSuccessorIds(i);
+			int[] order = new int[successorIds.length];
+
+			for(int k = 0; k < successorIds.length; k++) {
+				double arcCost = instance.getCost( i, successorIds[k] );
+				int position = k;
+				while( position > 0 && instance.getCost( i, successorIds[order[position - 1]] ) > arcCost ) {
+					order[position] = order[position - 1];
+					position--;
+				}
+				order[position] = k;
+			}
+
+			successorOrders[i] = order;
+		}
+	}
+
+	/**
+	 * @return number of pulses during the last resolution
+	 */
+	public long getNbPulses() {
+		return nbPulses;
+	}
+
+	/**
+	 * @return true if the last resolution was stopped by the time limit, so a missing negative route proves nothing
+	 */
+	public boolean isInterrupted() {
+		return !inTime;
+	}
+}
@@ -6,7 +6,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ilog.concert.IloColumn;
 import ilog.concert.IloConversion;
@@ -21,12 +28,54 @@ import ilog.cplex.IloCplex.UnknownObjectException;
 import model.Customer;
 import model.EspprcInstance;
 import model.Label;
+import model.ReducedCosts;
 import model.VRPTWResult;
 
 /**
  * @author pablo
  */
 public class VrptwSolver {
+
+    /**
+     * Algorithm solving the pricing problem
+     */
+    public enum Pricing {
+        /** Labelling over the elementary state space */
+        LABELLING,
+        /** Decremental state space relaxation, elementarity is enforced on the nodes found repeated */
+        DSSR,
+        /** Depth first exploration of the paths with bound, rollback and dominance pruning */
+        PULSE,
+        /** Labelling extending first the labels with the lowest cost plus bound to the depot */
+        BEST_FIRST,
+        /** Labelling keeping at each node the labels best scored on cost, time slack and diversity while heuristic */
+        BEAM,
+        /** Labellings with different label limits running at the same time, their routes being merged */
+        PORTFOLIO,
+        /** Labelling forwards and backwards up to the middle of the horizon, the labels being joined there */
+        BIDIRECTIONAL
+    }
+
+    /**
+     * Number of best routes the pulse and best first pricings look for
+     */
+    private static final int NB_BEST_ROUTES = 100;
+
+    /**
+     * Reduced cost a route must be under to count for the early stop of the labelling pricing
+     */
+    private static final double EARLY_STOP_REDUCED_COST = -1e-8;
+
+    /**
+     * Number of labels the beam search keeps at each node when no label limit is given
+     */
+    private static final int DEFAULT_BEAM_WIDTH = 50;
+
+    /**
+     * Label limit of each labelling of the portfolio pricing, the last one being exact
+     */
+    private static final int[] PORTFOLIO_LABEL_LIMITS = {5, 50, 0};
+
     /**
      * An instance containing the graph and the necessary information
      */
@@ -42,6 +91,79 @@ public class VrptwSolver {
      */
     private ArrayList<Label> columns;
 
+    /**
+     * If the pricing problem indexes the labels of each node with a skyline
+     */
+    private boolean useSkyline;
+
+    /**
+     * The order in which the pricing problem treats waiting nodes
+     */
+    private NodeScheduler.Policy queuePolicy = NodeScheduler.Policy.FIFO;
+
+    /**
+     * If the pricing problem extends its labels once in increasing time order
+     */
+    private boolean useTimeBuckets;
+
+    /**
+     * The ng-neighbourhoods of the pricing problem, built once for the instance, elementary routes if null
+     */
+    private long[][] ngNeighbourhoods;
+
+    /**
+     * Algorithm solving the pricing problem
+     */
+    private Pricing pricing = Pricing.LABELLING;
+
+    /**
+     * Length of the longest cycle forbidden by the relaxed pricing used in the first iterations,
+     * the relaxed pricing is not used if it is less than 2
+     */
+    private int cycleLength;
+
+    /**
+     * If the pricing problem discards the labels that cannot lead to a negative route
+     */
+    private boolean useCompletionBounds;
+
+    /**
+     * Time given to each labelling pricing in nanoseconds, the pricing returning the best routes found so far
+     * when it is reached, no limit but the one of the column generation if it is not positive
+     */
+    private long pricingTimeLimitNanos;
+
+    /**
+     * If the last pricing reached its time limit, so it does not prove there is no negative column left
+     */
+    private boolean pricingInterrupted;
+
+    /**
+     * Number of negative columns after which the labelling pricing stops in the first iterations,
+     * the pricing being complete from the first one finding less, not used if it is not positive
+     */
+    private int earlyStopNbColumns;
+
+    /**
+     * Number of threads extending the labels of the labelling pricing
+     */
+    private int nbPricingThreads = 1;
+
+    /**
+     * If the labelling pricing checks the dominance of large batches of labels on the fork join pool
+     */
+    private boolean useParallelDominance;
+
+    /**
+     * If the labelling pricing extends each label only to the successors it can still reach
+     */
+    private boolean useSuccessorVectors;
+
+    /**
+     * Threads running the labellings of the portfolio pricing, created once per column generation
+     */
+    private ExecutorService portfolioExecutor;
+
     /**
      * Initialize the solver with an ESPPRC instance
      *
@@ -60,6 +182,9 @@ public class VrptwSolver {
      * @return
      */
     public VRPTWResult runColumnGeneration(int timeLimit, int labelLimit, boolean writeColumns, boolean writeDuals) {
+        if (pricing == Pricing.PORTFOLIO) {
+            portfolioExecutor = Executors.newFixedThreadPool(PORTFOLIO_LABEL_LIMITS.length);
+        }
         try {
             cplex = new IloCplex();
 
@@ -109,9 +234,16 @@ public class VrptwSolver {
             long endTime = System.currentTimeMillis() + timeLimit * 1000;
 
             // Pricing problem parameters
-            int maxLabels = labelLimit;
+            int heuristicLabelLimit = labelLimit <= 0 && pricing == Pricing.BEAM ? DEFAULT_BEAM_WIDTH : labelLimit;
+            // The portfolio runs its own heuristic pricings next to the exact one
+            if (pricing == Pricing.PORTFOLIO) {
+                heuristicLabelLimit = 0;
+            }
+            int maxLabels = heuristicLabelLimit;
             int SPTimeLimit = timeLimit;
-            Label minCostRoute = initialCols.get(0);
+            double minReducedCost = initialCols.get(0).getCost();
+            boolean relaxedPricing = cycleLength >= 2;
+            boolean earlyStop = earlyStopNbColumns > 0;
 
             // > Start column generation loop
             int iteration = 0;
@@ -132,25 +264,53 @@ public class VrptwSolver {
                 // ======================== Solve Subproblem ==============================
 
                 // Update maximum label quantity for the pricing problem
-                if (iteration > 1 && minCostRoute.getCost() > costGap) {
+                if (iteration > 1 && minReducedCost > costGap) {
                     if (maxLabels > 0) {
                         maxLabels = 0;
-                    } else {
+                    } else if (!pricingInterrupted) {
                         finished = true;
                     }
                 } else if (maxLabels == 0) {
-                    maxLabels = labelLimit;
+                    maxLabels = heuristicLabelLimit;
+                }
+
+                ArrayList<Label> newRoutes = null;
+                if (relaxedPricing) {
+                    newRoutes = getRelaxedColumns(SPTimeLimit);
+
+                    // The exact pricing takes over once the relaxation finds no negative column
+                    if (newRoutes.isEmpty()) {
+                        System.out.println("Relaxed pricing finished");
+                        relaxedPricing = false;
+                    }
                 }
+                if (!relaxedPricing) {
+                    newRoutes = getNewColumns(SPTimeLimit, maxLabels, earlyStop ? earlyStopNbColumns : 0);
 
-                ArrayList<Label> newRoutes = getNewColumns(SPTimeLimit, maxLabels);
-                minCostRoute = newRoutes.get(0);
+                    // Every label is extended once a pricing ends without finding enough columns
+                    if (earlyStop && !pricingInterrupted) {
+                        System.out.println("Early stop finished");
+                        earlyStop = false;
+                    }
+                }
+                // With completion bounds no route reaches the depot when none is negative
+                minReducedCost = newRoutes.isEmpty() ? 0 : newRoutes.get(0).getCost();
 
                 // Add columns
                 addColumns(newRoutes, x, objective, nodeConstraints, capConstraint);
 
                 System.out.println("Iteration nº " + iteration);
-                System.out.println("Generated route " + minCostRoute.getRoute());
-                System.out.println("With reduced cost " + minCostRoute.getCost());
+                if (!newRoutes.isEmpty()) {
+                    System.out.println("Generated route " + newRoutes.get(0).getRoute());
+                }
+                System.out.println("With reduced cost " + minReducedCost);
+
+                // Without a negative column the duals stay the same, so an interrupted exact pricing
+                // would be repeated as it is until the time limit
+                if (pricingInterrupted && maxLabels == 0 && !relaxedPricing && minReducedCost > costGap) {
+                    System.out.println("Pricing interrupted without a negative column, the duals cannot change");
+                    break;
+                }
 
             } while (!finished && System.currentTimeMillis() < endTime);
 
@@ -171,7 +331,7 @@ public class VrptwSolver {
                     initialCols.size(),
                     columns.size(),
                     iteration,
-                    minCostRoute.getCost(),
+                    minReducedCost,
                     finished
             );
 
@@ -197,6 +357,11 @@ public class VrptwSolver {
 
         } catch (IloException | IOException e) {
             System.err.println("Concert exception caught: " + e);
+        } finally {
+            if (portfolioExecutor != null) {
+                portfolioExecutor.shutdownNow();
+                portfolioExecutor = null;
+            }
         }
 
         return null;
@@ -388,7 +553,7 @@ public class VrptwSolver {
             IloColumn col = cplex.column(obj, route.getRouteDistance(instance));
 
             for (int node = 0; node < instance.getNbNodes() - depotNodes; node++) {
-                int visit = route.isVisited(node + 1) ? 1 : 0;
+                int visit = route.getNbVisits(node + 1);
                 col = col.and(cplex.column(contn[node], visit));
             }
 
@@ -404,20 +569,72 @@ public class VrptwSolver {
      *
      * @param timeLimit
      * @param labelLimit
+     * @param nbTargetColumns number of negative columns after which the labelling pricing stops, 0 for no early stop
      * @return
      */
-    private ArrayList<Label> getNewColumns(int timeLimit, int labelLimit) {
-        LabellingSolver solver = new LabellingSolver(instance);
-
+    private ArrayList<Label> getNewColumns(int timeLimit, int labelLimit, int nbTargetColumns) {
         if (labelLimit == 0) {
             System.out.println("Solving exact method");
         }
-        ArrayList<Label>[] nodeLabels = solver.genFeasibleRoutes(timeLimit, labelLimit);
 
-        int depotIndex = instance.isDuplicateOrigin() ? nodeLabels.length - 1 : 0;
+        // The pricing reads the reduced costs of the current duals only
+        EspprcInstance pricingInstance = getPricingInstance(instance.getReducedCosts());
 
         // Get solution information
-        ArrayList<Label> depotLabels = nodeLabels[depotIndex];
+        ArrayList<Label> depotLabels;
+        pricingInterrupted = false;
+        if (pricing == Pricing.DSSR) {
+            DssrSolver solver = new DssrSolver(pricingInstance);
+            solver.setUseSkyline(useSkyline);
+            solver.setQueuePolicy(queuePolicy);
+            solver.setUseTimeBuckets(useTimeBuckets);
+
+            depotLabels = solver.genDepotLabels(timeLimit, labelLimit);
+            System.out.println("DSSR iterations: " + solver.getNbIterations());
+
+            pricingInterrupted = solver.isInterrupted();
+            if (pricingInterrupted) {
+                System.out.println("Pricing interrupted after " + solver.getNbExtensions() + " extensions");
+            }
+        } else if (pricing == Pricing.PULSE) {
+            PulseSolver solver = new PulseSolver(pricingInstance);
+
+            depotLabels = solver.genDepotLabels(timeLimit, NB_BEST_ROUTES);
+            System.out.println("Pulses: " + solver.getNbPulses());
+
+            pricingInterrupted = solver.isInterrupted();
+            if (pricingInterrupted) {
+                System.out.println("Pricing interrupted after " + solver.getNbPulses() + " pulses");
+            }
+        } else if (pricing == Pricing.BIDIRECTIONAL) {
+            BidirectionalSolver solver = new BidirectionalSolver(pricingInstance);
+            solver.setUseSkyline(useSkyline);
+            solver.setQueuePolicy(queuePolicy);
+
+            depotLabels = solver.genDepotLabels(timeLimit, labelLimit);
+
+            pricingInterrupted = solver.isInterrupted();
+            if (pricingInterrupted) {
+                System.out.println("Pricing interrupted after " + solver.getNbExtensions() + " extensions");
+            }
+        } else if (pricing == Pricing.PORTFOLIO) {
+            depotLabels = getPortfolioRoutes(pricingInstance.getReducedCosts(), timeLimit, nbTargetColumns);
+        } else {
+            LabellingSolver solver = createLabellingSolver(pricingInstance, nbTargetColumns);
+
+            if (pricing == Pricing.BEST_FIRST) {
+                depotLabels = solver.genBestDepotLabels(timeLimit, NB_BEST_ROUTES);
+            } else if (pricingTimeLimitNanos > 0) {
+                depotLabels = solver.genAnytimeDepotLabels(pricingTimeLimitNanos, labelLimit, NB_BEST_ROUTES);
+            } else {
+                depotLabels = solver.genDepotLabels(timeLimit, labelLimit);
+            }
+
+            pricingInterrupted = solver.isInterrupted();
+            if (pricingInterrupted) {
+                System.out.println("Pricing interrupted after " + solver.getNbExtensions() + " extensions");
+            }
+        }
 
         ArrayList<Label> negCostRoutes = new ArrayList<Label>();
         for (Label currentLabel : depotLabels) {
@@ -428,13 +645,259 @@ public class VrptwSolver {
 
         Collections.sort(negCostRoutes);
 
-        if (negCostRoutes.isEmpty()) {
+        if (negCostRoutes.isEmpty() && !depotLabels.isEmpty()) {
             negCostRoutes.add(depotLabels.get(0));
         }
 
         return negCostRoutes;
     }
 
+    /**
+     * Solve the pricing problem with a labelling for each label limit of the portfolio, all of them
+     * running at the same time on the current dual values. Once the exact labelling proves there is no
+     * negative route the others are cancelled.
+     *
+     * @param reducedCosts the reduced costs every labelling reads
+     * @param timeLimit
+     * @param nbTargetColumns number of negative columns after which each labelling stops, 0 for no early stop
+     * @return the routes found by the labellings without duplicates, in increasing cost order
+     */
+    private ArrayList<Label> getPortfolioRoutes(ReducedCosts reducedCosts, final int timeLimit, int nbTargetColumns) {
+        // Each solver has its own instance on the same reduced costs
+        final LabellingSolver[] solvers = new LabellingSolver[PORTFOLIO_LABEL_LIMITS.length];
+        for (int p = 0; p < solvers.length; p++) {
+            solvers[p] = createLabellingSolver(getPricingInstance(reducedCosts), nbTargetColumns);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ArrayList<Label>[] results = new ArrayList[solvers.length];
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(portfolioExecutor);
+        for (int p = 0; p < solvers.length; p++) {
+            final int pricer = p;
+            completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    results[pricer] = solvers[pricer].genDepotLabels(timeLimit, PORTFOLIO_LABEL_LIMITS[pricer]);
+                    return pricer;
+                }
+            });
+        }
+
+        // Merge the routes as the labellings end
+        HashSet<String> routes = new HashSet<String>();
+        ArrayList<Label> depotLabels = new ArrayList<Label>();
+        pricingInterrupted = true;
+        try {
+            for (int n = 0; n < solvers.length; n++) {
+                int pricer;
+                try {
+                    pricer = completionService.take().get();
+                } catch (ExecutionException e) {
+                    System.err.println("Pricing exception caught: " + e.getCause());
+                    continue;
+                }
+
+                boolean negative = false;
+                for (Label route : results[pricer]) {
+                    negative |= route.getCost() < 0;
+                    if (routes.add(route.getRoute())) {
+                        depotLabels.add(route);
+                    }
+                }
+
+                if (PORTFOLIO_LABEL_LIMITS[pricer] == 0 && !solvers[pricer].isInterrupted()) {
+                    pricingInterrupted = false;
+
+                    if (!negative) {
+                        System.out.println("Exact pricing found no negative route");
+                        for (LabellingSolver solver : solvers) {
+                            solver.cancel();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (LabellingSolver solver : solvers) {
+                solver.cancel();
+            }
+            Thread.currentThread().interrupt();
+        }
+
+        Collections.sort(depotLabels);
+
+        return depotLabels;
+    }
+
+    /**
+     * @param reducedCosts
+     * @return an instance sharing the nodes, distances and successors of the solved instance
+     * with the given reduced costs, which stay the same whatever the duals of the next iterations
+     */
+    private EspprcInstance getPricingInstance(ReducedCosts reducedCosts) {
+        return new EspprcInstance(instance, reducedCosts);
+    }
+
+    /**
+     * @param pricingInstance the instance with the reduced costs to price
+     * @param nbTargetColumns number of negative columns after which the labelling stops, 0 for no early stop
+     * @return a labelling pricing solver with the options of the column generation
+     */
+    private LabellingSolver createLabellingSolver(EspprcInstance pricingInstance, int nbTargetColumns) {
+        LabellingSolver solver = new LabellingSolver(pricingInstance);
+        solver.setUseSkyline(useSkyline);
+        solver.setQueuePolicy(queuePolicy);
+        solver.setUseTimeBuckets(useTimeBuckets);
+        solver.setNgNeighbourhoods(ngNeighbourhoods);
+        solver.setUseCompletionBounds(useCompletionBounds);
+        solver.setEarlyStop(nbTargetColumns, EARLY_STOP_REDUCED_COST);
+        solver.setUseBeamSearch(pricing == Pricing.BEAM);
+        solver.setNbThreads(nbPricingThreads);
+        solver.setUseParallelDominance(useParallelDominance);
+        solver.setUseSuccessorVectors(useSuccessorVectors);
+
+        return solver;
+    }
+
+    /**
+     * Get the negative cost routes of the pricing problem relaxed with k-cycle elimination.
+     * The relaxed routes visiting a node more than once are left out, so every column of the master,
+     * and of the final integer problem, is an elementary route
+     *
+     * @param timeLimit
+     * @return the elementary routes in increasing cost order, empty if there is none
+     */
+    private ArrayList<Label> getRelaxedColumns(int timeLimit) {
+        EspprcInstance pricingInstance = getPricingInstance(instance.getReducedCosts());
+        CycleEliminationSolver solver = new CycleEliminationSolver(pricingInstance, cycleLength);
+        solver.setQueuePolicy(queuePolicy);
+
+        ArrayList<Label> negCostRoutes = new ArrayList<Label>();
+        for (Label currentLabel : solver.genDepotLabels(timeLimit)) {
+            if (currentLabel.getCost() < 0 && isElementary(currentLabel)) {
+                negCostRoutes.add(currentLabel);
+            }
+        }
+
+        return negCostRoutes;
+    }
+
+    /**
+     * @param route
+     * @return true if the route visits each node at most once, the origin not counting as a visit
+     * since it is also the end of the route without a duplicated origin
+     */
+    private boolean isElementary(Label route) {
+        boolean[] visited = new boolean[instance.getNbNodes()];
+
+        for (Label label = route; label.getPreviousLabel() != null; label = label.getPreviousLabel()) {
+            int id = label.getCurrent().getId();
+            if (visited[id]) {
+                return false;
+            }
+            visited[id] = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param useSkyline set to "true" to index the pricing labels of each node with a skyline
+     */
+    public void setUseSkyline(boolean useSkyline) {
+        this.useSkyline = useSkyline;
+    }
+
+    /**
+     * @param queuePolicy the order in which the pricing problem treats waiting nodes
+     */
+    public void setQueuePolicy(NodeScheduler.Policy queuePolicy) {
+        this.queuePolicy = queuePolicy;
+    }
+
+    /**
+     * @param useTimeBuckets set to "true" to extend the pricing labels once in increasing time order
+     * instead of following the queue policy
+     */
+    public void setUseTimeBuckets(boolean useTimeBuckets) {
+        this.useTimeBuckets = useTimeBuckets;
+    }
+
+    /**
+     * @param ngNeighbourhoodSize number of nearest customers in the ng-neighbourhoods of the pricing problem,
+     * the generated routes are elementary if it is not positive
+     */
+    public void setNgNeighbourhoodSize(int ngNeighbourhoodSize) {
+        if (ngNeighbourhoodSize > 0) {
+            instance.buildNgNeighbourhoods(ngNeighbourhoodSize);
+            this.ngNeighbourhoods = instance.getNgNeighbourhoods();
+        } else {
+            this.ngNeighbourhoods = null;
+        }
+    }
+
+    /**
+     * @param pricing the algorithm solving the pricing problem
+     */
+    public void setPricing(Pricing pricing) {
+        this.pricing = pricing;
+    }
+
+    /**
+     * @param cycleLength length of the longest cycle forbidden by the relaxed pricing used until it finds
+     * no negative column, set it to 0 to only use the exact pricing
+     */
+    public void setCycleLength(int cycleLength) {
+        this.cycleLength = cycleLength;
+    }
+
+    /**
+     * @param useCompletionBounds set to "true" to bound the cost to reach the depot before each pricing
+     * and discard the labels that cannot lead to a negative route
+     */
+    public void setUseCompletionBounds(boolean useCompletionBounds) {
+        this.useCompletionBounds = useCompletionBounds;
+    }
+
+    /**
+     * @param pricingTimeLimitNanos time given to each labelling pricing in nanoseconds, the pricing returning
+     * the best routes found so far when it is reached, set it to 0 to only use the column generation time limit
+     */
+    public void setPricingTimeLimitNanos(long pricingTimeLimitNanos) {
+        this.pricingTimeLimitNanos = pricingTimeLimitNanos;
+    }
+
+    /**
+     * @param nbPricingThreads number of threads extending the labels of the labelling pricing at the same time
+     */
+    public void setNbPricingThreads(int nbPricingThreads) {
+        this.nbPricingThreads = nbPricingThreads;
+    }
+
+    /**
+     * @param useParallelDominance set to "true" to check the dominance of large batches of labels
+     * of the labelling pricing on the fork join pool
+     */
+    public void setUseParallelDominance(boolean useParallelDominance) {
+        this.useParallelDominance = useParallelDominance;
+    }
+
+    /**
+     * @param useSuccessorVectors set to "true" to go through the reachable successors of each label
+     * of the labelling pricing with bit operations
+     */
+    public void setUseSuccessorVectors(boolean useSuccessorVectors) {
+        this.useSuccessorVectors = useSuccessorVectors;
+    }
+
+    /**
+     * @param earlyStopNbColumns number of negative columns after which the labelling pricing stops
+     * while it keeps finding that many, set it to 0 to always extend every label
+     */
+    public void setEarlyStopNbColumns(int earlyStopNbColumns) {
+        this.earlyStopNbColumns = earlyStopNbColumns;
+    }
+
     /**
      * Generate columns folowing the start time order until there is no more capacity
      *